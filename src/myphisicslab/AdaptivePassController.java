@@ -0,0 +1,81 @@
+package myphisicslab;
+
+/**
+ * AdaptivePassController Class
+ *
+ * Decides how many passes of a sweep to run. Without a confidence width every pass up to
+ * the pass limit runs. With a confidence width passes run in batches, and the sweep stops once
+ * the 95% confidence interval of the mean energy is narrower than the confidence width times
+ * the mean at every frequency, or at the pass limit. At least MIN_PASSES passes always run,
+ * as one pass has no interval.
+ */
+public class AdaptivePassController {
+    public static final int MIN_PASSES = 2;
+
+    private double confidenceWidth;
+    private int passLimit;
+
+    /**
+     * @param confidenceWidth - largest width of the interval relative to the mean, 0 runs all passes
+     * @param passLimit - largest number of passes
+     */
+    public AdaptivePassController(double confidenceWidth, int passLimit) {
+        this.confidenceWidth = confidenceWidth;
+        this.passLimit = passLimit;
+    }
+
+    /**
+     * Returns true if the sweep can stop before the pass limit
+     * @return boolean
+     */
+    public boolean isAdaptive() {
+        return confidenceWidth > 0;
+    }
+
+    /**
+     * Returns number of passes to run next, which run concurrently
+     * @param passesDone - number of passes finished so far
+     * @param parallelism - number of passes that can run at the same time
+     * @return int
+     */
+    public int getNextBatch(int passesDone, int parallelism) {
+        int remaining = passLimit - passesDone;
+        if (!isAdaptive()) {
+            return remaining;
+        }
+        return Math.max(0, Math.min(remaining, Math.max(MIN_PASSES - passesDone, Math.max(1, parallelism))));
+    }
+
+    /**
+     * Returns true if no more passes are needed
+     * @param results - results of the finished passes
+     * @param passesDone - number of passes finished so far
+     * @return boolean
+     */
+    public boolean isComplete(SpectrumResults results, int passesDone) {
+        if (passesDone >= passLimit) {
+            return true;
+        }
+        return isAdaptive() && getWidestInterval(results) <= confidenceWidth;
+    }
+
+    /**
+     * Returns the widest 95% confidence interval of all frequencies, relative to the mean.
+     * Frequencies with zero mean energy are skipped.
+     * @param results - results of the finished passes
+     * @return double, infinity if a frequency has less than MIN_PASSES passes
+     */
+    public static double getWidestInterval(SpectrumResults results) {
+        double widest = 0;
+        for (int i=0; i<results.getFrequencyCount(); i++) {
+            if (results.getCount(i) < MIN_PASSES) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double mean = results.getMean(i);
+            if (mean > 0) {
+                widest = Math.max(widest, 2 * results.getConfidenceHalfWidth(i) / mean);
+            }
+        }
+        return widest;
+    }
+}
@@ -0,0 +1,153 @@
+package myphisicslab;
+
+import java.util.ArrayList;
+
+/**
+ * AdjacencyIndex Class
+ *
+ * Compressed sparse row (CSR) index of the Edges of a Network.
+ * It is built once from the edge list and stores, for every Node, the range of Edges
+ * that are connected to it, together with the Node on the other end of each Edge.
+ * Node indices are the Node ids, which are the positions of Nodes in the node list.
+ *
+ * Endpoints of every Edge are also kept in two flat arrays, so that spring forces can be
+ * evaluated by visiting each Edge exactly once.
+ */
+public class AdjacencyIndex {
+    private int nodeCount;
+    private int[] edgeFrom;
+    private int[] edgeTo;
+    private int[] rowStart;
+    private int[] neighbours;
+    private int[] incidentEdges;
+
+    /**
+     * Builds the index from the edge list of a Network.
+     * @param nodeCount - number of Nodes in the Network
+     * @param edgeList - list of Edges, position in the list is used as edge index
+     */
+    public AdjacencyIndex(int nodeCount, ArrayList<Edge> edgeList) {
+        this.nodeCount = nodeCount;
+        int edgeCount = edgeList.size();
+        edgeFrom = new int[edgeCount];
+        edgeTo = new int[edgeCount];
+        for (int e=0; e<edgeCount; e++) {
+            Edge edge = edgeList.get(e);
+            edgeFrom[e] = edge.getNodeFrom().getId();
+            edgeTo[e] = edge.getNodeTo().getId();
+        }
+        buildRows();
+    }
+
+    /**
+     * Builds the index from flat endpoint arrays.
+     * @param nodeCount - number of Nodes in the Network
+     * @param edgeFrom - from Node of each Edge
+     * @param edgeTo - to Node of each Edge
+     */
+    public AdjacencyIndex(int nodeCount, int[] edgeFrom, int[] edgeTo) {
+        this.nodeCount = nodeCount;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        buildRows();
+    }
+
+    /**
+     * Counts the degree of every Node and fills rows of the index.
+     * Each Edge is stored twice, once in the row of each of its Nodes.
+     */
+    private void buildRows() {
+        rowStart = new int[nodeCount + 1];
+        for (int e=0; e<edgeFrom.length; e++) {
+            rowStart[edgeFrom[e] + 1]++;
+            rowStart[edgeTo[e] + 1]++;
+        }
+        for (int n=0; n<nodeCount; n++) {
+            rowStart[n + 1] += rowStart[n];
+        }
+
+        neighbours = new int[rowStart[nodeCount]];
+        incidentEdges = new int[rowStart[nodeCount]];
+        int[] next = new int[nodeCount];
+        System.arraycopy(rowStart, 0, next, 0, nodeCount);
+        for (int e=0; e<edgeFrom.length; e++) {
+            int from = edgeFrom[e];
+            int to = edgeTo[e];
+            neighbours[next[from]] = to;
+            incidentEdges[next[from]++] = e;
+            neighbours[next[to]] = from;
+            incidentEdges[next[to]++] = e;
+        }
+    }
+
+    /**
+     * Returns number of Nodes in the index
+     * @return int
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns number of Edges in the index
+     * @return int
+     */
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+
+    /**
+     * Returns the from Node of an Edge
+     * @param edge - edge index
+     * @return int
+     */
+    public int getEdgeFrom(int edge) {
+        return edgeFrom[edge];
+    }
+
+    /**
+     * Returns the to Node of an Edge
+     * @param edge - edge index
+     * @return int
+     */
+    public int getEdgeTo(int edge) {
+        return edgeTo[edge];
+    }
+
+    /**
+     * Returns number of Edges connected to a Node
+     * @param node - node index
+     * @return int
+     */
+    public int getDegree(int node) {
+        return rowStart[node + 1] - rowStart[node];
+    }
+
+    /**
+     * Returns position of the first entry of a Node in neighbour and incident edge arrays.
+     * Entries of the Node end at getRowStart(node + 1).
+     * @param node - node index
+     * @return int
+     */
+    public int getRowStart(int node) {
+        return rowStart[node];
+    }
+
+    /**
+     * Returns the Node on the other end of the Edge stored at given entry
+     * @param entry - position between getRowStart(node) and getRowStart(node + 1)
+     * @return int
+     */
+    public int getNeighbour(int entry) {
+        return neighbours[entry];
+    }
+
+    /**
+     * Returns the Edge stored at given entry
+     * @param entry - position between getRowStart(node) and getRowStart(node + 1)
+     * @return int
+     */
+    public int getIncidentEdge(int entry) {
+        return incidentEdges[entry];
+    }
+}
@@ -0,0 +1,439 @@
+package myphisicslab;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchRunner Class
+ *
+ * Command line entry point that calculates spectra of many networks without any windows.
+ * Jobs are read from a folder, one job for each .net file with the common options,
+ * or from a manifest text file with one job per line: a network file followed by its own
+ * options, which override the common options. Empty lines and lines starting with # are skipped,
+ * relative paths are relative to the folder of the manifest.
+ *
+ * Jobs run on a fixed number of worker threads, by default one for each core, and frequency
+ * points of all jobs share a single ForkJoinPool. Jobs of the same network, for example a study
+ * of several option sets, load it one at a time, so only the first saves its snapshot. Each job
+ * relaxes the network with its own options; jobs with the same relaxation settings relax it one at
+ * a time, so the first stores the layout in the cache and the others read it. Jobs are identified
+ * by a hash of the canonical path of the network file and their options, a job that is listed
+ * again is skipped. Each job is run by SpectrumRunner into its own folder inside the output folder,
+ * so results keep the layout of exportToFile.
+ *
+ * Status of every finished job is appended to batch-status.csv in the output folder and synced
+ * to disk. A batch that is started again with the same output folder skips jobs that are done,
+ * so an interrupted batch resumes where it left off, and failed jobs are tried again.
+ *
+ * Usage:
+ * java -Djava.awt.headless=true -cp ... myphisicslab.BatchRunner folder|manifest.txt
+ *      [-workers 4] [-output folder] [-cache folder] [-cacheSize 256] [-checkpoint 30] [SpectrumRunner options]
+ */
+public class BatchRunner {
+    public static final String STATUS_FILE_NAME = "batch-status.csv";
+    public static final String STATUS_DONE = "done";
+    public static final String STATUS_FAILED = "failed";
+
+    private File destination;
+    private ForkJoinPool pool;
+    private RelaxedLayoutCache layoutCache = null;
+    private long checkpointMillis = SpectrumCheckpointWriter.DEFAULT_CHECKPOINT_MILLIS;
+    private File statusFile;
+    private Map<String, String> statuses;
+    //-- Lock for each network file and for each layout key, so jobs of the same network load it
+    //-- one at a time, and jobs with the same relaxation relax it one at a time
+    private final ConcurrentHashMap<Object, Object> locks = new ConcurrentHashMap<Object, Object>();
+
+    /**
+     * Single job of the batch, a network with its options
+     */
+    public static class Job {
+        final String id;
+        final File networkFile;
+        final List<String> options;
+
+        Job(File networkFile, List<String> options) {
+            //-- Same file reached by another path, from a folder or a moved manifest, is the same job
+            File canonicalFile;
+            try {
+                canonicalFile = networkFile.getCanonicalFile();
+            } catch (IOException e) {
+                canonicalFile = networkFile.getAbsoluteFile();
+            }
+            this.networkFile = canonicalFile;
+            this.options = options;
+            //-- Same network and options give the same id when the batch is started again
+            String name = networkFile.getName();
+            int extension = name.lastIndexOf('.');
+            if (extension > 0) {
+                name = name.substring(0, extension);
+            }
+            String description = canonicalFile.getPath() + " " + options;
+            this.id = name + "-" + getHash(description);
+        }
+
+        /**
+         * Returns first 16 hexadecimal characters of the SHA-256 hash of the text
+         * @param text - description of a job
+         * @return String
+         */
+        private static String getHash(String text) {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                //-- Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(16);
+            for (int b=0; b<8; b++) {
+                hex.append(String.format("%02x", hash[b]));
+            }
+            return hex.toString();
+        }
+
+        /**
+         * Returns id of the job, which is also the name of its folder
+         * @return String
+         */
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * @param destination - output folder of the batch
+     * @param pool - pool that runs frequency points of all jobs
+     * @throws IOException if the status file can not be read
+     */
+    public BatchRunner(File destination, ForkJoinPool pool) throws IOException {
+        this.destination = destination;
+        this.pool = pool;
+        this.statusFile = new File(destination, STATUS_FILE_NAME);
+        this.statuses = readStatuses(statusFile);
+    }
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        File source = null;
+        File destination = new File(".");
+        File cacheDirectory = RelaxedLayoutCache.getDefaultDirectory();
+        long cacheSize = RelaxedLayoutCache.DEFAULT_SIZE_LIMIT;
+        long checkpointMillis = SpectrumCheckpointWriter.DEFAULT_CHECKPOINT_MILLIS;
+        int workers = Runtime.getRuntime().availableProcessors();
+        List<String> commonOptions = new ArrayList<String>();
+        List<Job> jobs = null;
+        try {
+            for (int i=0; i<args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("-")) {
+                    source = new File(arg);
+                } else if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                } else if (arg.equals("-workers")) {
+                    workers = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-cache")) {
+                    cacheDirectory = new File(args[++i]);
+                } else if (arg.equals("-cacheSize")) {
+                    cacheSize = Long.parseLong(args[++i]) * 1024 * 1024;
+                } else if (arg.equals("-checkpoint")) {
+                    checkpointMillis = (long)(Double.parseDouble(args[++i]) * 1000);
+                } else if (arg.equals("-output")) {
+                    destination = new File(args[++i]);
+                } else {
+                    //-- Checked now, so a wrong option does not fail every job
+                    SpectrumRunner.setOption(new SpectrumParameters(), arg, args[i + 1]);
+                    commonOptions.add(arg);
+                    commonOptions.add(args[++i]);
+                }
+            }
+            if (source == null) {
+                throw new IllegalArgumentException("Network folder or manifest is not set.");
+            }
+            if (workers < 1) {
+                throw new IllegalArgumentException("Number of workers must be at least 1.");
+            }
+            jobs = readJobs(source, commonOptions);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            BatchRunner batchRunner = new BatchRunner(destination, pool);
+            if (cacheSize > 0) {
+                batchRunner.setLayoutCache(new RelaxedLayoutCache(cacheDirectory, cacheSize));
+            }
+            batchRunner.setCheckpointMillis(checkpointMillis);
+            int failed = batchRunner.run(jobs, workers);
+            System.exit(failed == 0 ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Batch is interrupted.");
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchRunner folder|manifest.txt [-workers 4] [-output folder]"
+                + " [-cache folder] [-cacheSize 256] [-checkpoint 30] [SpectrumRunner options]");
+    }
+
+    /**
+     * Sets cache of relaxed positions shared by all jobs
+     * @param layoutCache
+     */
+    public void setLayoutCache(RelaxedLayoutCache layoutCache) {
+        this.layoutCache = layoutCache;
+    }
+
+    /**
+     * Sets time between checkpoints of the sweep of every job, 0 to keep points in memory only
+     * @param checkpointMillis - time in milliseconds
+     */
+    public void setCheckpointMillis(long checkpointMillis) {
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    /**
+     * Reads jobs from a folder of .net files, or from a manifest file.
+     * @param source - folder or manifest file
+     * @param commonOptions - options of every job, as pairs of name and value
+     * @return list of jobs
+     * @throws IOException if the source can not be read
+     * @throws IllegalArgumentException if a line of the manifest has a wrong option
+     */
+    public static List<Job> readJobs(File source, List<String> commonOptions) throws IOException {
+        List<Job> jobs = new ArrayList<Job>();
+        if (source.isDirectory()) {
+            File[] files = source.listFiles();
+            if (files == null) {
+                throw new IOException("Network folder can not be read: " + source);
+            }
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().toLowerCase().endsWith(".net")) {
+                    jobs.add(new Job(file, commonOptions));
+                }
+            }
+            return jobs;
+        }
+
+        List<String> lines = Files.readAllLines(source.toPath(), StandardCharsets.UTF_8);
+        for (int l=0; l<lines.size(); l++) {
+            String line = lines.get(l).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            if (tokens.length % 2 == 0) {
+                throw new IllegalArgumentException("Line " + (l + 1) + " of the manifest must be a network file"
+                        + " followed by options with values: " + line);
+            }
+            List<String> options = new ArrayList<String>(commonOptions);
+            for (int t=1; t<tokens.length; t+=2) {
+                SpectrumRunner.setOption(new SpectrumParameters(), tokens[t], tokens[t + 1]);
+                options.add(tokens[t]);
+                options.add(tokens[t + 1]);
+            }
+            File networkFile = new File(tokens[0]);
+            if (!networkFile.isAbsolute()) {
+                networkFile = new File(source.getAbsoluteFile().getParentFile(), tokens[0]);
+            }
+            jobs.add(new Job(networkFile, options));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all jobs that are not done yet and waits until they finish.
+     * A job that is listed more than once, the same network with the same options, runs once.
+     * @param jobs - jobs of the batch
+     * @param workers - number of jobs that run at the same time
+     * @return number of failed jobs
+     * @throws IOException if the output folder does not exist
+     * @throws InterruptedException if waiting for the jobs is interrupted
+     */
+    public int run(List<Job> jobs, int workers) throws IOException, InterruptedException {
+        if (!destination.isDirectory()) {
+            throw new IOException("Destination folder does not exist: " + destination);
+        }
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final int total = jobs.size();
+        Set<String> jobIds = new HashSet<String>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            for (final Job job : jobs) {
+                //-- Repeated job would write into the same folder and points file at the same time
+                if (!jobIds.add(job.id)) {
+                    System.out.println("Skipped, repeated job: " + job.id);
+                    finished.incrementAndGet();
+                    continue;
+                }
+                if (STATUS_DONE.equals(getStatus(job.id))) {
+                    System.out.println("Skipped, already done: " + job.id);
+                    finished.incrementAndGet();
+                    continue;
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean done = runJob(job);
+                        if (!done) {
+                            failed.incrementAndGet();
+                        }
+                        System.out.println("Finished " + finished.incrementAndGet() + " of " + total + ": "
+                                + job.id + (done ? "" : " failed"));
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            //-- Spectra of large networks can run for hours
+        }
+        return failed.get();
+    }
+
+    /**
+     * Runs a single job into its own folder and records its status.
+     * @param job - job to run
+     * @return true if the job is done
+     */
+    private boolean runJob(Job job) {
+        try {
+            SpectrumParameters parameters = new SpectrumParameters();
+            for (int i=0; i<job.options.size(); i+=2) {
+                SpectrumRunner.setOption(parameters, job.options.get(i), job.options.get(i + 1));
+            }
+            String error = parameters.validate();
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+            File jobFolder = new File(destination, job.id);
+            if (!jobFolder.isDirectory() && !jobFolder.mkdirs()) {
+                throw new IOException("Can not create job folder: " + jobFolder);
+            }
+            SpectrumRunner runner = new SpectrumRunner(parameters, pool);
+            runner.setLayoutCache(layoutCache);
+            runner.setCheckpointMillis(checkpointMillis);
+            //-- First job of a network saves its snapshot, the others wait and read it
+            Network network;
+            synchronized (getLock(job.networkFile)) {
+                network = runner.loadNetwork(job.networkFile);
+            }
+            //-- First job with these relaxation settings stores the layout, the others wait and read it
+            if (layoutCache != null) {
+                synchronized (getLock(runner.getLayoutKey(network))) {
+                    runner.relax(network);
+                }
+            } else {
+                runner.relax(network);
+            }
+            String resultPath = runner.run(job.networkFile, network, jobFolder);
+            writeStatus(job, STATUS_DONE, resultPath);
+            return true;
+        } catch (Exception e) {
+            System.err.println(job.id + ": " + e.getMessage());
+            try {
+                writeStatus(job, STATUS_FAILED, String.valueOf(e.getMessage()));
+            } catch (IOException statusError) {
+                System.err.println(statusError.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns lock of a canonical network file or of a layout key, the same object for every job
+     * @param key - canonical network file or layout key
+     * @return Object
+     */
+    private Object getLock(Object key) {
+        Object lock = new Object();
+        Object existingLock = locks.putIfAbsent(key, lock);
+        return (existingLock != null) ? existingLock : lock;
+    }
+
+    /**
+     * Appends status of a job to the status file and syncs it to disk.
+     * Line is job id, status, network file and details, details are the result path when done.
+     */
+    private synchronized void writeStatus(Job job, String status, String details) throws IOException {
+        String line = job.id + "," + status + "," + job.networkFile.getPath() + ","
+                + details.replace('\n', ' ').replace(',', ';') + System.lineSeparator();
+        try (FileOutputStream stream = new FileOutputStream(statusFile, true)) {
+            stream.write(line.getBytes(StandardCharsets.UTF_8));
+            stream.getFD().sync();
+        }
+        statuses.put(job.id, status);
+    }
+
+    /**
+     * Reads the last status of each job from the status file, if there is one.
+     * @param statusFile - status file of the batch
+     * @return map from job id to status
+     * @throws IOException if the file exists and can not be read
+     */
+    static Map<String, String> readStatuses(File statusFile) throws IOException {
+        Map<String, String> statuses = new HashMap<String, String>();
+        if (!statusFile.isFile()) {
+            return statuses;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(statusFile.toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",", 3);
+                if (values.length >= 2) {
+                    statuses.put(values[0], values[1]);
+                }
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Returns last recorded status of a job, or null if it has not finished yet
+     * @param jobId - id of the job
+     * @return String
+     */
+    public synchronized String getStatus(String jobId) {
+        return statuses.get(jobId);
+    }
+}
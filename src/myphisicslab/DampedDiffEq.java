@@ -0,0 +1,14 @@
+package myphisicslab;
+
+/**
+ * Differential equation of masses whose variables are laid out as x, y, vx, vy for each mass,
+ * and whose acceleration includes a damping term proportional to velocity.
+ * Solvers specialised for such equations, as VelocityVerlet, use the damping rate
+ * to treat the damping term implicitly.
+ */
+public interface DampedDiffEq extends DiffEq {
+  /* returns damping rate c of velocity variable i, so that the acceleration
+     returned by evaluate contains the term -c * x[i].
+     Returns 0 if velocity i is not damped. */
+  public double getDampingRate(int i);
+}
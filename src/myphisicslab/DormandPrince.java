@@ -0,0 +1,199 @@
+package myphisicslab;
+
+/**
+ * DormandPrince Class
+ *
+ * Embedded Runge-Kutta method of order 5 with error estimate of order 4 (Dormand-Prince 5(4)).
+ * Each call of step advances the variables by the requested time, which is split into as many
+ * internal steps as the error tolerance requires. Size of internal steps is adapted from the
+ * estimated error and kept between calls, so calm phases of a run take one internal step per
+ * call while stiff phases are subdivided automatically.
+ *
+ * The last stage of an accepted step is the first stage of the next one (first same as last),
+ * so an accepted internal step costs six evaluations of the equation.
+ *
+ * As RungeKutta, the variables of the equation are modified only at the end of the step,
+ * by adding the change over the step to them.
+ */
+public class DormandPrince implements DiffEqSolver {
+    private static final double C2 = 1.0/5, C3 = 3.0/10, C4 = 4.0/5, C5 = 8.0/9;
+    private static final double A21 = 1.0/5;
+    private static final double A31 = 3.0/40, A32 = 9.0/40;
+    private static final double A41 = 44.0/45, A42 = -56.0/15, A43 = 32.0/9;
+    private static final double A51 = 19372.0/6561, A52 = -25360.0/2187, A53 = 64448.0/6561, A54 = -212.0/729;
+    private static final double A61 = 9017.0/3168, A62 = -355.0/33, A63 = 46732.0/5247, A64 = 49.0/176,
+            A65 = -5103.0/18656;
+    private static final double B1 = 35.0/384, B3 = 500.0/1113, B4 = 125.0/192, B5 = -2187.0/6784, B6 = 11.0/84;
+    //-- Difference between weights of the 5th and 4th order solutions
+    private static final double E1 = 71.0/57600, E3 = -71.0/16695, E4 = 71.0/1920, E5 = -17253.0/339200,
+            E6 = 22.0/525, E7 = -1.0/40;
+
+    private static final double SAFETY = 0.9;
+    private static final double MIN_FACTOR = 0.2;
+    private static final double MAX_FACTOR = 5.0;
+
+    private DiffEq ode;
+    //-- Same as ode if the equation depends on time, otherwise null
+    private TimedDiffEq timedOde;
+    private double absoluteTolerance = 1e-6;
+    private double relativeTolerance = 1e-6;
+    private double minStepSize = 1e-9;
+    //-- Size of the next internal step, 0 until the first step is taken
+    private double internalStepSize = 0;
+    private long evaluationCount = 0;
+    private long rejectedCount = 0;
+
+    private double[] y0, y, inp, k1, k2, k3, k4, k5, k6, k7;
+
+    public DormandPrince(DiffEq ode) {
+        this.ode = ode;
+        this.timedOde = (ode instanceof TimedDiffEq) ? (TimedDiffEq)ode : null;
+    }
+
+    /**
+     * Sets error tolerances, error of each variable is compared with
+     * absolute + relative * size of the variable.
+     * @param absoluteTolerance
+     * @param relativeTolerance
+     */
+    public void setTolerance(double absoluteTolerance, double relativeTolerance) {
+        this.absoluteTolerance = absoluteTolerance;
+        this.relativeTolerance = relativeTolerance;
+    }
+
+    /**
+     * Sets the smallest internal step, a step of this size is accepted whatever its error is,
+     * so the solver does not stall.
+     * @param minStepSize
+     */
+    public void setMinStepSize(double minStepSize) {
+        this.minStepSize = minStepSize;
+    }
+
+    /**
+     * Returns size of the next internal step
+     * @return double
+     */
+    public double getInternalStepSize() {
+        return internalStepSize;
+    }
+
+    /**
+     * Returns number of evaluations of the equation so far
+     * @return long
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * Returns number of internal steps that were rejected and taken again with smaller size
+     * @return long
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Advances variables of the equation by stepSize.
+     * @param stepSize - time increment
+     */
+    public void step(double stepSize) {
+        if (stepSize <= 0) {
+            return;
+        }
+        double[] vars = ode.getVars();
+        int N = vars.length;
+        if ((y == null) || (y.length != N)) {
+            y0 = new double[N];
+            y = new double[N];
+            inp = new double[N];
+            k1 = new double[N];
+            k2 = new double[N];
+            k3 = new double[N];
+            k4 = new double[N];
+            k5 = new double[N];
+            k6 = new double[N];
+            k7 = new double[N];
+        }
+        boolean[] calc = ode.getCalc();
+        System.arraycopy(vars, 0, y0, 0, N);
+        System.arraycopy(vars, 0, y, 0, N);
+
+        double h = (internalStepSize > 0) ? internalStepSize : stepSize;
+        double t = 0;
+        double t0 = (timedOde != null) ? timedOde.getTime() : 0;
+        evaluate(y, k1, t0);
+        while (t < stepSize) {
+            //-- The last internal step ends exactly at the end of the step
+            boolean last = (h >= stepSize - t);
+            double hh = last ? stepSize - t : h;
+            int i;
+            for (i=0; i<N; i++)
+                inp[i] = y[i] + hh*A21*k1[i];
+            evaluate(inp, k2, t0 + t + C2*hh);
+            for (i=0; i<N; i++)
+                inp[i] = y[i] + hh*(A31*k1[i] + A32*k2[i]);
+            evaluate(inp, k3, t0 + t + C3*hh);
+            for (i=0; i<N; i++)
+                inp[i] = y[i] + hh*(A41*k1[i] + A42*k2[i] + A43*k3[i]);
+            evaluate(inp, k4, t0 + t + C4*hh);
+            for (i=0; i<N; i++)
+                inp[i] = y[i] + hh*(A51*k1[i] + A52*k2[i] + A53*k3[i] + A54*k4[i]);
+            evaluate(inp, k5, t0 + t + C5*hh);
+            for (i=0; i<N; i++)
+                inp[i] = y[i] + hh*(A61*k1[i] + A62*k2[i] + A63*k3[i] + A64*k4[i] + A65*k5[i]);
+            evaluate(inp, k6, t0 + t + hh);
+            //-- 5th order solution, its rate of change is the 7th stage
+            for (i=0; i<N; i++)
+                inp[i] = calc[i] ? y[i] + hh*(B1*k1[i] + B3*k3[i] + B4*k4[i] + B5*k5[i] + B6*k6[i]) : y[i];
+            evaluate(inp, k7, t0 + t + hh);
+
+            //-- Root mean square of errors scaled by tolerance
+            double error = 0;
+            int count = 0;
+            for (i=0; i<N; i++) {
+                if (!calc[i])
+                    continue;
+                double e = hh*(E1*k1[i] + E3*k3[i] + E4*k4[i] + E5*k5[i] + E6*k6[i] + E7*k7[i]);
+                double scale = absoluteTolerance + relativeTolerance * Math.max(Math.abs(y[i]), Math.abs(inp[i]));
+                error += (e/scale)*(e/scale);
+                count++;
+            }
+            error = (count > 0) ? Math.sqrt(error/count) : 0;
+
+            double factor = (error == 0) ? MAX_FACTOR
+                    : Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, SAFETY * Math.pow(error, -0.2)));
+            if (error <= 1.0 || hh <= minStepSize || Double.isNaN(error)) {
+                t = last ? stepSize : t + hh;
+                double[] swap = y;
+                y = inp;
+                inp = swap;
+                swap = k1;
+                k1 = k7;
+                k7 = swap;
+                //-- A shortened last step does not limit size of the next step
+                if (!last || hh >= h) {
+                    h = hh * factor;
+                }
+            } else {
+                rejectedCount++;
+                h = Math.max(minStepSize, hh * factor);
+            }
+        }
+        internalStepSize = h;
+
+        for (int i=0; i<N; i++)
+            if (calc[i])
+                vars[i] = vars[i] + (y[i] - y0[i]);
+    }
+
+    private void evaluate(double[] x, double[] change, double time) {
+        if (timedOde != null) {
+            timedOde.evaluate(x, change, time);
+        } else {
+            ode.evaluate(x, change);
+        }
+        evaluationCount++;
+    }
+}
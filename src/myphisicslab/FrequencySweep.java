@@ -0,0 +1,492 @@
+package myphisicslab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * FrequencySweep Class
+ *
+ * Engine that calculates one pass of the spectrum of a network.
+ * Each frequency point is an independent driven and damped run, which starts from the same
+ * relaxed positions with zero velocity and lasts for pass time. Every point gets its own
+ * NetworkEquation and solver, while the NetworkModel is shared, so points are evaluated
+ * concurrently on a ForkJoinPool.
+ *
+ * Result of each point is the maximum energy of edges averaged over all edges,
+ * which is the same value that Network2DSim.nextRun adds to the current series.
+ *
+ * With warm start, points of a pass run in order as one continuous simulation instead:
+ * each point starts from the state where the previous one ended, and the driving wave changes
+ * frequency without a jump in phase, so each point has a shorter transient.
+ *
+ * Passes are independent repetitions that differ only in the phase of the driving wave,
+ * drawn from a seed for each pass after the first, and runPasses runs them concurrently.
+ */
+public class FrequencySweep {
+    private NetworkModel model;
+    private double[] initialVars;
+    private ForkJoinPool pool;
+    private double amplitude = 5.0;
+    private double damping = 20.0;
+    private double gravity = 0.0;
+    private double passTime = 10.0;
+    private double stepSize = 0.01;
+    private double nodeOffset = 0.0;
+    private String solver = SpectrumParameters.SOLVER_RUNGE_KUTTA;
+    private double steadyStateTolerance = 0.0;
+    private boolean warmStart = false;
+    private volatile boolean cancelled = false;
+    private PointListener pointListener = null;
+
+    /**
+     * Receives each pass of runPasses as soon as it is finished
+     */
+    public interface PassListener {
+        /**
+         * Called on the thread that finished the pass, passes can finish in any order
+         * and from several threads at the same time.
+         * @param pass - index of the pass, from 0
+         * @param energies - average maximum energy for each frequency
+         */
+        void passFinished(int pass, double[] energies);
+    }
+
+    /**
+     * Receives each frequency point of runPasses and resumePasses as soon as it is finished
+     */
+    public interface PointListener {
+        /**
+         * Called on the thread that finished the point, from several threads at the same time.
+         * @param pass - index of the pass, from 0
+         * @param index - index of the frequency
+         * @param energy - average maximum energy of the point
+         * @param state - with warm start, state of the pass after the point as returned by
+         *                NetworkEquation.saveState, which the next point continues from; otherwise null
+         */
+        void pointFinished(int pass, int index, double energy, double[] state);
+    }
+
+    /**
+     * Creates sweep engine.
+     * @param model - packed network, shared between all frequency points
+     * @param initialVars - relaxed state, x, y, vx, vy for each node, is copied
+     * @param pool - pool that runs frequency points
+     */
+    public FrequencySweep(NetworkModel model, double[] initialVars, ForkJoinPool pool) {
+        this.model = model;
+        this.initialVars = initialVars.clone();
+        this.pool = pool;
+    }
+
+    /**
+     * Returns frequencies of one pass, in the same order as Network2DSim steps through them.
+     * Starts from 0 and adds increment while frequency is below limit.
+     * @param frequencyLimit - maximum frequency
+     * @param incrementFrequency - frequency step
+     * @return array of double
+     */
+    public static double[] getFrequencies(double frequencyLimit, double incrementFrequency) {
+        ArrayList<Double> frequencies = new ArrayList<Double>();
+        double frequency = 0.0;
+        while (frequency < frequencyLimit) {
+            frequencies.add(frequency);
+            frequency += incrementFrequency;
+        }
+        double[] result = new double[frequencies.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = frequencies.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns state with nodes placed evenly on a circle of radius 4 and zero velocity,
+     * the same layout that Network2DSim starts from before positions are worked out.
+     * @param nodeCount - number of nodes
+     * @return x, y, vx, vy for each node
+     */
+    public static double[] getCircleLayout(int nodeCount) {
+        double[] layout = new double[4 * nodeCount];
+        double radius = 4;
+        double angleIncrement = (2*Math.PI)/nodeCount;
+        for (int i=0; i<nodeCount; i++) {
+            layout[4*i] = radius * Math.cos(angleIncrement * i);
+            layout[1 + 4*i] = radius * Math.sin(angleIncrement * i);
+        }
+        return layout;
+    }
+
+    /**
+     * Lets the network settle without driving force, as Network2DSim.evaluatePositions does
+     * before the sweep, and returns the relaxed positions with zero velocity.
+     * @param model - packed network
+     * @param startVars - state to start from, x, y, vx, vy for each node
+     * @param relaxTime - simulation time of the relaxation
+     * @param stepSize - step size of the solver
+     * @return relaxed state
+     */
+    public static double[] relax(NetworkModel model, double[] startVars, double relaxTime, double stepSize) {
+        NetworkEquation equation = new NetworkEquation(model);
+        equation.reset(startVars);
+        equation.setDamping(20.0);
+        DiffEqSolver solver = new RungeKutta(equation);
+        int steps = (int)Math.ceil(relaxTime / stepSize);
+        for (int s=0; s<steps; s++) {
+            solver.step(stepSize);
+        }
+        double[] relaxed = equation.getVars().clone();
+        for (int i=0; i<relaxed.length; i++) {
+            if (i%4 == 2 || i%4 == 3) {
+                relaxed[i] = 0;
+            }
+        }
+        return relaxed;
+    }
+
+    /**
+     * Sets amplitude of the driving force
+     * @param amplitude
+     */
+    public void setAmplitude(double amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    /**
+     * Sets damping force coefficient
+     * @param damping
+     */
+    public void setDamping(double damping) {
+        this.damping = damping;
+    }
+
+    /**
+     * Sets gravity
+     * @param gravity
+     */
+    public void setGravity(double gravity) {
+        this.gravity = gravity;
+    }
+
+    /**
+     * Sets duration of each frequency point in simulation time
+     * @param passTime
+     */
+    public void setPassTime(double passTime) {
+        this.passTime = passTime;
+    }
+
+    /**
+     * Sets step size of the solver
+     * @param stepSize
+     */
+    public void setStepSize(double stepSize) {
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * Sets offset between variables and drawn position of a node
+     * @param nodeOffset - half of the node width
+     */
+    public void setNodeOffset(double nodeOffset) {
+        this.nodeOffset = nodeOffset;
+    }
+
+    /**
+     * Sets solver used for frequency points
+     * @param solver - one of SpectrumParameters.SOLVERS
+     */
+    public void setSolver(String solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Sets tolerance of SteadyStateDetector, a point ends before pass time once the peak of
+     * summed edge energy changes by less than this fraction for a few periods. 0 turns it off.
+     * @param steadyStateTolerance
+     */
+    public void setSteadyStateTolerance(double steadyStateTolerance) {
+        this.steadyStateTolerance = steadyStateTolerance;
+    }
+
+    /**
+     * Sets if points of a pass continue from the state of the previous point, in order,
+     * instead of running concurrently from the relaxed state.
+     * @param warmStart
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Sets listener of finished frequency points of runPasses and resumePasses, null for none
+     * @param pointListener
+     */
+    public void setPointListener(PointListener pointListener) {
+        this.pointListener = pointListener;
+    }
+
+    /**
+     * Stops all frequency points that are running, as soon as they finish current step.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the sweep has been cancelled
+     * @return boolean
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Calculates one pass of the spectrum, frequency points run concurrently.
+     * Blocks until all points have finished.
+     * @param frequencies - frequencies of the pass
+     * @return average maximum energy for each frequency, in the same order
+     */
+    public double[] run(double[] frequencies) {
+        double[] energies = new double[frequencies.length];
+        Arrays.fill(energies, Double.NaN);
+        if (warmStart) {
+            runWarm(frequencies, energies, 0, null, -1);
+        } else {
+            pool.invoke(new SweepTask(frequencies, energies, 0, frequencies.length, 0, -1));
+        }
+        return energies;
+    }
+
+    /**
+     * Runs all passes concurrently, each pass has its own equations and its own phase of the
+     * driving wave. Returns when all passes are finished or the sweep is cancelled.
+     * @param frequencies - frequencies of every pass
+     * @param firstPass - index of the first pass, passes are numbered on from it
+     * @param passes - number of passes
+     * @param seed - seed of the phases
+     * @param listener - receives each pass as it is finished, not called for a cancelled pass
+     */
+    public void runPasses(double[] frequencies, int firstPass, int passes, long seed, PassListener listener) {
+        double[][] energies = new double[passes][frequencies.length];
+        for (int pass=0; pass<passes; pass++) {
+            Arrays.fill(energies[pass], Double.NaN);
+        }
+        resumePasses(frequencies, energies, new double[passes][], firstPass, seed, listener);
+    }
+
+    /**
+     * Runs all passes concurrently as runPasses, but only frequency points whose energy is NaN,
+     * so passes of an interrupted sweep continue where they stopped.
+     * With warm start a pass continues from the state after its last known point.
+     * @param frequencies - frequencies of every pass
+     * @param energies - energy of each pass and frequency, NaN for points that are not known,
+     *                   filled in as points finish
+     * @param states - with warm start, state of each pass after its last known point
+     *                 as returned by NetworkEquation.saveState, null to run the pass again from the start
+     * @param firstPass - index of the pass in energies[0], passes are numbered on from it
+     * @param seed - seed of the phases
+     * @param listener - receives each pass as it is finished, not called for a cancelled pass
+     */
+    public void resumePasses(double[] frequencies, double[][] energies, double[][] states, int firstPass,
+                             long seed, PassListener listener) {
+        final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[energies.length];
+        for (int i=0; i<energies.length; i++) {
+            int pass = firstPass + i;
+            tasks[i] = new PassTask(frequencies, energies[i], states[i], pass, getPassPhase(seed, pass), listener);
+        }
+        pool.invoke(new RecursiveAction() {
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Returns phase of the driving wave of a pass. First pass has phase 0, as a single run,
+     * other passes have a phase between 0 and 2 pi that depends only on the seed and the pass.
+     * @param seed - seed of the phases
+     * @param pass - index of the pass, from 0
+     * @return phase in radians
+     */
+    public static double getPassPhase(long seed, int pass) {
+        if (pass == 0) {
+            return 0;
+        }
+        return 2 * Math.PI * new Random(seed * 31 + pass).nextDouble();
+    }
+
+    /**
+     * Runs frequency points in order as one simulation, each point starts where the previous ended.
+     * @param frequencies - frequencies of the pass
+     * @param energies - output average maximum energy for each frequency
+     * @param phase - phase of the driving wave at time 0
+     * @param state - state after the last known point, null to start from the first point
+     * @param pass - index of the pass given to the point listener, -1 for none
+     */
+    private void runWarm(double[] frequencies, double[] energies, double phase, double[] state, int pass) {
+        int start = 0;
+        while (start < frequencies.length && !Double.isNaN(energies[start])) {
+            start++;
+        }
+        if (start == frequencies.length) {
+            return;
+        }
+        NetworkEquation equation = createEquation(frequencies[0], phase);
+        if (start > 0 && state != null) {
+            equation.restoreState(state);
+            equation.setFrequency(frequencies[start - 1]);
+        } else {
+            start = 0;
+        }
+        DiffEqSolver solver = SpectrumParameters.createSolver(this.solver, equation);
+        for (int i=start; i<frequencies.length && !cancelled; i++) {
+            if (i > 0) {
+                equation.changeFrequency(frequencies[i]);
+                equation.resetMaxEnergy();
+            }
+            energies[i] = runSteps(equation, solver, frequencies[i]);
+            if (pass >= 0 && pointListener != null && !cancelled) {
+                pointListener.pointFinished(pass, i, energies[i], equation.saveState());
+            }
+        }
+    }
+
+    /**
+     * Runs a single frequency point from the relaxed state,
+     * for pass time or until it is steady if steady state tolerance is set.
+     * @param frequency - frequency of the driving force
+     * @return average maximum energy of all edges, or NaN if cancelled
+     */
+    public double runPoint(double frequency) {
+        return runPoint(frequency, 0);
+    }
+
+    /**
+     * Runs a single frequency point from the relaxed state with given phase of the driving wave.
+     */
+    private double runPoint(double frequency, double phase) {
+        NetworkEquation equation = createEquation(frequency, phase);
+        DiffEqSolver solver = SpectrumParameters.createSolver(this.solver, equation);
+        return runSteps(equation, solver, frequency);
+    }
+
+    /**
+     * Steps the equation from its current state for pass time, or until it is steady.
+     * @param equation - equation set up for the frequency
+     * @param solver - solver of the equation
+     * @param frequency - frequency of the driving force
+     * @return average maximum energy of all edges, or NaN if cancelled
+     */
+    private double runSteps(NetworkEquation equation, DiffEqSolver solver, double frequency) {
+        int steps = (int)Math.ceil(passTime / stepSize);
+        SteadyStateDetector detector = null;
+        if (steadyStateTolerance > 0) {
+            detector = new SteadyStateDetector(steadyStateTolerance, SteadyStateDetector.DEFAULT_PERIODS);
+            detector.reset(frequency, equation.getTime());
+        }
+        equation.recordEdgeEnergies();
+        for (int s=0; s<steps; s++) {
+            if (cancelled) {
+                return Double.NaN;
+            }
+            equation.step(solver, stepSize);
+            if (detector != null && detector.update(equation.getTime(), equation.getTotalEnergy())) {
+                break;
+            }
+        }
+        return equation.getAverageMaxEnergy();
+    }
+
+    /**
+     * Creates equation set up with parameters of this sweep and the relaxed state.
+     * @param frequency - frequency of the driving force
+     * @param phase - phase of the driving wave at time 0
+     * @return NetworkEquation
+     */
+    private NetworkEquation createEquation(double frequency, double phase) {
+        NetworkEquation equation = new NetworkEquation(model);
+        equation.reset(initialVars);
+        equation.setAmplitude(amplitude);
+        equation.setDamping(damping);
+        equation.setGravity(gravity);
+        equation.setFrequency(frequency);
+        equation.setPhaseOffset(phase);
+        equation.setNodeOffset(nodeOffset);
+        return equation;
+    }
+
+    /**
+     * Task that splits range of frequency points in half until a single point is left.
+     */
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private double[] frequencies;
+        private double[] energies;
+        private int start, end;
+        private double phase;
+        private int pass;
+
+        SweepTask(double[] frequencies, double[] energies, int start, int end, double phase, int pass) {
+            this.frequencies = frequencies;
+            this.energies = energies;
+            this.start = start;
+            this.end = end;
+            this.phase = phase;
+            this.pass = pass;
+        }
+
+        protected void compute() {
+            if (end - start == 1) {
+                //-- Points that are already known are not run again
+                if (Double.isNaN(energies[start])) {
+                    energies[start] = runPoint(frequencies[start], phase);
+                    if (pass >= 0 && pointListener != null && !cancelled) {
+                        pointListener.pointFinished(pass, start, energies[start], null);
+                    }
+                }
+            } else if (end - start > 1) {
+                int middle = (start + end) / 2;
+                invokeAll(new SweepTask(frequencies, energies, start, middle, phase, pass),
+                        new SweepTask(frequencies, energies, middle, end, phase, pass));
+            }
+        }
+    }
+
+    /**
+     * Task that runs one pass and hands it to the listener.
+     */
+    private class PassTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private double[] frequencies;
+        private double[] energies;
+        private double[] state;
+        private int pass;
+        private double phase;
+        private PassListener listener;
+
+        PassTask(double[] frequencies, double[] energies, double[] state, int pass, double phase,
+                 PassListener listener) {
+            this.frequencies = frequencies;
+            this.energies = energies;
+            this.state = state;
+            this.pass = pass;
+            this.phase = phase;
+            this.listener = listener;
+        }
+
+        protected void compute() {
+            if (warmStart) {
+                runWarm(frequencies, energies, phase, state, pass);
+            } else {
+                new SweepTask(frequencies, energies, 0, frequencies.length, phase, pass).invoke();
+            }
+            if (!cancelled) {
+                listener.passFinished(pass, energies);
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package myphisicslab;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * HarmonicResponse Class
+ *
+ * Calculates the spectrum of a network in the frequency domain. The driving force of
+ * Network2DSim.getElectroForce is sinusoidal, so the steady state of the linearised network
+ * at each frequency w is the solution of the complex sparse system
+ * (K - w^2 M - i w C) u = F, with u(t) = Re(u e^(-i w t)),
+ * where K is the stiffness of ModalAnalysis, M the diagonal mass, C = damping * I and F the
+ * complex amplitude of the electro magnetic force. There is no transient and no time stepping,
+ * each frequency point is a single sparse factorisation and solve.
+ *
+ * Variables are ordered by reverse Cuthill-McKee ordering of the nodes, which keeps nonzeros
+ * of the matrix close to the diagonal, and the matrix is factorised as L D L^T in its envelope,
+ * where no fill happens outside. Ordering and envelope are the symbolic factorisation, they are
+ * calculated once and shared by all frequencies, which run concurrently on a ForkJoinPool.
+ * Each running frequency holds its own complex envelope, whose size depends on how far apart
+ * connected nodes are in the ordering, so it suits networks with mostly local connections.
+ *
+ * The matrix is complex symmetric, not Hermitian. Its imaginary part -w C is definite for w > 0,
+ * so no pivot is zero and the factorisation needs no pivoting. At w = 0, or without damping,
+ * a small multiple of M is added, which removes rigid body motions, as they do not stretch edges.
+ * Nodes of infinite mass do not move and are left out of the system.
+ *
+ * As with ModalAnalysis, the spectrum matches the simulated one only in the small amplitude limit,
+ * getLargestRelativeStretch tells whether the last run stayed within it.
+ */
+public class HarmonicResponse {
+    //-- Wave number of the driving wave, as in Network2DSim.getElectroForce
+    private static final double WAVE_NUMBER = 2 * Math.PI / 0.25;
+    //-- Shift of a singular system, as a fraction of the average diagonal of M^-1 K
+    private static final double ZERO_SHIFT = 1e-8;
+
+    private NetworkModel model;
+    private double[] equilibrium;
+    private ForkJoinPool pool;
+    private double amplitude = 5.0;
+    private double damping = 20.0;
+    private double nodeOffset = 0.0;
+    //-- Largest amplitude of stretch relative to the rest length in the last run
+    private double largestRelativeStretch = 0;
+
+    //-- Symbolic factorisation
+    private int size;
+    //-- Original variable of each row, x and y for each node
+    private int[] variable;
+    //-- Row of each variable, -1 for nodes that do not move
+    private int[] row;
+    //-- Row i keeps columns from firstColumn[i] to i, in envelope from envelopeStart[i]
+    private int[] firstColumn;
+    private int[] envelopeStart;
+    //-- Lower half of the stiffness matrix, added to the envelope for every frequency
+    private int[] stiffnessTarget;
+    private double[] stiffnessValue;
+    private double[] mass;
+    private double shift;
+
+    /**
+     * Builds the ordering and the envelope of the system.
+     * @param model - packed network, shared between all frequency points
+     * @param equilibriumVars - relaxed state, x, y, vx, vy for each node
+     * @param pool - pool that runs frequency points
+     */
+    public HarmonicResponse(NetworkModel model, double[] equilibriumVars, ForkJoinPool pool) {
+        this.model = model;
+        this.equilibrium = equilibriumVars.clone();
+        this.pool = pool;
+        analyse();
+    }
+
+    public void setAmplitude(double amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    public void setDamping(double damping) {
+        this.damping = damping;
+    }
+
+    /**
+     * Sets offset between variables and drawn position of a node, half of node width
+     * @param nodeOffset
+     */
+    public void setNodeOffset(double nodeOffset) {
+        this.nodeOffset = nodeOffset;
+    }
+
+    /**
+     * Returns number of values kept in the envelope of the factorisation
+     * @return long
+     */
+    public long getEnvelopeSize() {
+        return envelopeStart[size];
+    }
+
+    /**
+     * Orders free nodes by reverse Cuthill-McKee, finds the envelope of each row and
+     * where each element of the stiffness matrix goes in the envelope.
+     */
+    private void analyse() {
+        int nodeCount = model.getNodeCount();
+        AdjacencyIndex adjacency = model.getAdjacency();
+        boolean[] free = new boolean[nodeCount];
+        int freeNodes = 0;
+        for (int n=0; n<nodeCount; n++) {
+            double m = model.getMass(n);
+            free[n] = m > 0 && !Double.isInfinite(m);
+            if (free[n])
+                freeNodes++;
+        }
+
+        int[] order = reverseCuthillMcKee(adjacency, free, freeNodes);
+        size = 2 * freeNodes;
+        variable = new int[size];
+        row = new int[2 * nodeCount];
+        Arrays.fill(row, -1);
+        for (int p=0; p<freeNodes; p++) {
+            for (int i=0; i<2; i++) {
+                variable[2*p + i] = 2*order[p] + i;
+                row[2*order[p] + i] = 2*p + i;
+            }
+        }
+
+        //-- Both rows of a node start at the first row of its earliest free neighbour
+        firstColumn = new int[size];
+        envelopeStart = new int[size + 1];
+        for (int p=0; p<freeNodes; p++) {
+            int n = order[p];
+            int first = 2*p;
+            for (int entry=adjacency.getRowStart(n); entry<adjacency.getRowStart(n + 1); entry++) {
+                int other = row[2*adjacency.getNeighbour(entry)];
+                if (other >= 0 && other < first)
+                    first = other;
+            }
+            firstColumn[2*p] = first;
+            firstColumn[2*p + 1] = first;
+        }
+        for (int i=0; i<size; i++) {
+            long end = (long)envelopeStart[i] + i - firstColumn[i] + 1;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Envelope of the network is too large: " + end);
+            }
+            envelopeStart[i + 1] = (int)end;
+        }
+
+        //-- Unscaled stiffness of the free variables, in the original order of nodes
+        double[] inverseRoot = new double[2 * nodeCount];
+        int[] freeIndex = new int[2 * nodeCount];
+        int count = 0;
+        for (int i=0; i<2 * nodeCount; i++) {
+            inverseRoot[i] = free[i/2] ? 1 : 0;
+            freeIndex[i] = free[i/2] ? count++ : -1;
+        }
+        int[] freeVariable = new int[count];
+        for (int i=0; i<2 * nodeCount; i++) {
+            if (freeIndex[i] >= 0)
+                freeVariable[freeIndex[i]] = i;
+        }
+        SparseSymmetricMatrix stiffness = new ModalAnalysis(model, equilibrium)
+                .assembleSparseStiffness(inverseRoot, freeIndex, count);
+
+        int[] rowStart = stiffness.getRowStart();
+        int[] columns = stiffness.getColumns();
+        double[] values = stiffness.getValues();
+        stiffnessTarget = new int[rowStart[count]];
+        stiffnessValue = values;
+        for (int r=0; r<count; r++) {
+            int i = row[freeVariable[r]];
+            for (int entry=rowStart[r]; entry<rowStart[r + 1]; entry++) {
+                int j = row[freeVariable[columns[entry]]];
+                stiffnessTarget[entry] = (j <= i) ? envelopeStart[i] + j - firstColumn[i] : -1;
+            }
+        }
+
+        mass = new double[size];
+        double diagonal = 0;
+        for (int i=0; i<size; i++) {
+            mass[i] = model.getMass(variable[i] / 2);
+            diagonal += stiffness.getDiagonal(freeIndex[variable[i]]) / mass[i];
+        }
+        shift = ZERO_SHIFT * ((size > 0 && diagonal > 0) ? diagonal/size : 1);
+    }
+
+    /**
+     * Reverse Cuthill-McKee ordering of free nodes. Each connected part starts from a node
+     * of lowest degree, is visited breadth first with neighbours in order of increasing degree,
+     * and the whole order is reversed.
+     * @return free nodes in new order
+     */
+    static int[] reverseCuthillMcKee(AdjacencyIndex adjacency, boolean[] free, int freeNodes) {
+        int nodeCount = adjacency.getNodeCount();
+        int[] degree = new int[nodeCount];
+        for (int n=0; n<nodeCount; n++) {
+            if (!free[n])
+                continue;
+            for (int entry=adjacency.getRowStart(n); entry<adjacency.getRowStart(n + 1); entry++) {
+                if (free[adjacency.getNeighbour(entry)])
+                    degree[n]++;
+            }
+        }
+        //-- Nodes sorted by degree, so each part starts from a node of lowest degree
+        Integer[] byDegree = new Integer[nodeCount];
+        for (int n=0; n<nodeCount; n++) {
+            byDegree[n] = n;
+        }
+        final int[] degrees = degree;
+        Arrays.sort(byDegree, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return degrees[a] - degrees[b];
+            }
+        });
+
+        int[] order = new int[freeNodes];
+        boolean[] visited = new boolean[nodeCount];
+        int[] neighbours = new int[16];
+        int head = 0, tail = 0;
+        for (int s=0; s<nodeCount; s++) {
+            int start = byDegree[s];
+            if (!free[start] || visited[start])
+                continue;
+            visited[start] = true;
+            order[tail++] = start;
+            while (head < tail) {
+                int n = order[head++];
+                int count = 0;
+                for (int entry=adjacency.getRowStart(n); entry<adjacency.getRowStart(n + 1); entry++) {
+                    int other = adjacency.getNeighbour(entry);
+                    if (free[other] && !visited[other]) {
+                        visited[other] = true;
+                        if (count == neighbours.length) {
+                            neighbours = Arrays.copyOf(neighbours, 2 * count);
+                        }
+                        neighbours[count++] = other;
+                    }
+                }
+                //-- Insertion sort, rows of a sparse network are short
+                for (int i=1; i<count; i++) {
+                    int node = neighbours[i];
+                    int j = i - 1;
+                    while (j >= 0 && degree[neighbours[j]] > degree[node]) {
+                        neighbours[j + 1] = neighbours[j];
+                        j--;
+                    }
+                    neighbours[j + 1] = node;
+                }
+                for (int i=0; i<count; i++) {
+                    order[tail++] = neighbours[i];
+                }
+            }
+        }
+        for (int i=0; i<freeNodes/2; i++) {
+            int swap = order[i];
+            order[i] = order[freeNodes - 1 - i];
+            order[freeNodes - 1 - i] = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Calculates one pass of the spectrum, frequency points run concurrently.
+     * Blocks until all points have finished.
+     * @param frequencies - frequencies of the driving force
+     * @return average maximum energy for each frequency, in the same order
+     */
+    public double[] run(double[] frequencies) {
+        double[] energies = new double[frequencies.length];
+        largestRelativeStretch = 0;
+        pool.invoke(new ResponseTask(frequencies, energies, 0, frequencies.length));
+        return energies;
+    }
+
+    /**
+     * Solves the steady state at a single frequency.
+     * @param frequency - frequency of the driving force
+     * @return average maximum energy of all edges
+     */
+    public double runPoint(double frequency) {
+        double omega = 2 * Math.PI * frequency;
+        int envelopeSize = envelopeStart[size];
+        double[] re = new double[envelopeSize];
+        double[] im = new double[envelopeSize];
+        for (int entry=0; entry<stiffnessTarget.length; entry++) {
+            if (stiffnessTarget[entry] >= 0)
+                re[stiffnessTarget[entry]] += stiffnessValue[entry];
+        }
+        double stiffnessShift = (omega * damping == 0) ? shift : 0;
+        for (int i=0; i<size; i++) {
+            int diagonal = envelopeStart[i + 1] - 1;
+            re[diagonal] += (stiffnessShift - omega*omega) * mass[i];
+            im[diagonal] -= omega * damping;
+        }
+        factorise(re, im);
+
+        //-- Force on y of node n is m q A e^(i k x), acceleration of the drive times mass
+        double[] uRe = new double[size], uIm = new double[size];
+        for (int i=1; i<size; i+=2) {
+            int n = variable[i] / 2;
+            double phase = WAVE_NUMBER * (equilibrium[4*n] - nodeOffset);
+            double force = mass[i] * model.getCharge(n) * amplitude;
+            uRe[i] = force * Math.cos(phase);
+            uIm[i] = force * Math.sin(phase);
+        }
+        solve(re, im, uRe, uIm);
+
+        int nodeCount = model.getNodeCount();
+        double[] dispRe = new double[2 * nodeCount], dispIm = new double[2 * nodeCount];
+        for (int i=0; i<size; i++) {
+            dispRe[variable[i]] = uRe[i];
+            dispIm[variable[i]] = uIm[i];
+        }
+        recordRelativeStretch(ModalAnalysis.getLargestRelativeStretch(model, equilibrium, dispRe, dispIm));
+        return ModalAnalysis.getAverageEdgeEnergy(model, equilibrium, dispRe, dispIm);
+    }
+
+    /**
+     * Keeps the largest relative stretch, frequency points finish on several threads
+     * @param relativeStretch - largest relative stretch of one frequency point
+     */
+    private synchronized void recordRelativeStretch(double relativeStretch) {
+        largestRelativeStretch = Math.max(largestRelativeStretch, relativeStretch);
+    }
+
+    /**
+     * Returns the largest amplitude of stretch relative to the rest length of its edge, over all
+     * edges and frequencies since the last run. The spectrum is close to the simulated one only
+     * while this is well below ModalAnalysis.LINEAR_STRETCH_LIMIT.
+     * @return double
+     */
+    public synchronized double getLargestRelativeStretch() {
+        return largestRelativeStretch;
+    }
+
+    /**
+     * Factorises the envelope in place into L D L^T, row by row.
+     * Row i keeps L(i, j) for j below i and D(i) on the diagonal.
+     */
+    private void factorise(double[] re, double[] im) {
+        for (int i=0; i<size; i++) {
+            int fi = firstColumn[i], si = envelopeStart[i] - fi;
+            //-- First w(j) = L(i, j) D(j) is calculated in place, then divided by D(j)
+            for (int j=fi; j<i; j++) {
+                int fj = firstColumn[j], sj = envelopeStart[j] - fj;
+                double sumRe = re[si + j], sumIm = im[si + j];
+                for (int k=Math.max(fi, fj); k<j; k++) {
+                    double aRe = re[si + k], aIm = im[si + k];
+                    double bRe = re[sj + k], bIm = im[sj + k];
+                    sumRe -= aRe*bRe - aIm*bIm;
+                    sumIm -= aRe*bIm + aIm*bRe;
+                }
+                re[si + j] = sumRe;
+                im[si + j] = sumIm;
+            }
+            double dRe = re[si + i], dIm = im[si + i];
+            for (int j=fi; j<i; j++) {
+                int dj = envelopeStart[j + 1] - 1;
+                double wRe = re[si + j], wIm = im[si + j];
+                double denominator = re[dj]*re[dj] + im[dj]*im[dj];
+                double lRe = (wRe*re[dj] + wIm*im[dj]) / denominator;
+                double lIm = (wIm*re[dj] - wRe*im[dj]) / denominator;
+                re[si + j] = lRe;
+                im[si + j] = lIm;
+                dRe -= wRe*lRe - wIm*lIm;
+                dIm -= wRe*lIm + wIm*lRe;
+            }
+            re[si + i] = dRe;
+            im[si + i] = dIm;
+        }
+    }
+
+    /**
+     * Solves L D L^T u = b with the factorised envelope, b is replaced by u.
+     */
+    private void solve(double[] re, double[] im, double[] bRe, double[] bIm) {
+        for (int i=0; i<size; i++) {
+            int fi = firstColumn[i], si = envelopeStart[i] - fi;
+            double sumRe = bRe[i], sumIm = bIm[i];
+            for (int j=fi; j<i; j++) {
+                sumRe -= re[si + j]*bRe[j] - im[si + j]*bIm[j];
+                sumIm -= re[si + j]*bIm[j] + im[si + j]*bRe[j];
+            }
+            bRe[i] = sumRe;
+            bIm[i] = sumIm;
+        }
+        for (int i=0; i<size; i++) {
+            int d = envelopeStart[i + 1] - 1;
+            double denominator = re[d]*re[d] + im[d]*im[d];
+            double xRe = (bRe[i]*re[d] + bIm[i]*im[d]) / denominator;
+            double xIm = (bIm[i]*re[d] - bRe[i]*im[d]) / denominator;
+            bRe[i] = xRe;
+            bIm[i] = xIm;
+        }
+        for (int i=size-1; i>=0; i--) {
+            int fi = firstColumn[i], si = envelopeStart[i] - fi;
+            for (int j=fi; j<i; j++) {
+                bRe[j] -= re[si + j]*bRe[i] - im[si + j]*bIm[i];
+                bIm[j] -= re[si + j]*bIm[i] + im[si + j]*bRe[i];
+            }
+        }
+    }
+
+    /**
+     * Task that splits range of frequency points in half until a single point is left.
+     */
+    private class ResponseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private double[] frequencies;
+        private double[] energies;
+        private int start, end;
+
+        ResponseTask(double[] frequencies, double[] energies, int start, int end) {
+            this.frequencies = frequencies;
+            this.energies = energies;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - start == 1) {
+                energies[start] = runPoint(frequencies[start]);
+            } else if (end - start > 1) {
+                int middle = (start + end) / 2;
+                invokeAll(new ResponseTask(frequencies, energies, start, middle),
+                        new ResponseTask(frequencies, energies, middle, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+package myphisicslab;
+
+import java.util.Arrays;
+
+/**
+ * ModalAnalysis Class
+ *
+ * Calculates the spectrum of a network from its linearised equations of motion instead of
+ * integrating every frequency point. Around the relaxed positions, motion of the nodes follows
+ * M u'' + C u' + K u = F, where M is the diagonal mass matrix, C = damping * I,
+ * K is the stiffness matrix assembled from spring constants, rest lengths and directions
+ * of the edges at equilibrium, and F is the electro magnetic force in y direction.
+ *
+ * The eigenproblem K v = w^2 M v is solved as the symmetric problem of M^-1/2 K M^-1/2
+ * with Jacobi rotations, which gives natural frequencies and mass normalised modes.
+ * Steady state response to the driving wave is the sum of modal responses, with damping of
+ * each mode taken from the diagonal of the modal damping matrix. Predicted energy of each edge
+ * is its maximum over one period, 1/2 k (|s0| + |ds|)^2, where s0 is the stretch at equilibrium
+ * and ds is the amplitude of the stretch, averaged over edges as in the simulated spectrum.
+ * The prediction holds only for small amplitudes: once ds is no longer small compared with the
+ * rest length, the springs act nonlinearly and the simulated spectrum differs, by several times
+ * at low frequencies. getLargestRelativeStretch tells how far the last spectrum is from that limit.
+ *
+ * solve uses dense matrices, memory grows with (2 * number of nodes)^2, so it is meant for
+ * networks of up to a few hundred nodes. solveLowest assembles the mass scaled stiffness
+ * as a SparseSymmetricMatrix and finds only the lowest modes with ShiftInvertLanczos,
+ * for large networks. Nodes of infinite mass do not move and are left out of the sparse problem.
+ */
+public class ModalAnalysis {
+    //-- Wave number of the driving wave, as in Network2DSim.getElectroForce
+    private static final double WAVE_NUMBER = 2 * Math.PI / 0.25;
+    //-- Eigenvalues below this fraction of the largest are rigid body motions, which do not stretch edges
+    private static final double RIGID_TOLERANCE = 1e-9;
+    private static final int MAX_SWEEPS = 100;
+    //-- Shift of the sparse solver, as a fraction of the average diagonal of the mass scaled stiffness
+    private static final double SHIFT_FRACTION = 1e-3;
+    //-- Networks up to this number of nodes are solved with dense matrices
+    public static final int DENSE_NODE_LIMIT = 200;
+    //-- Stretch amplitude above this fraction of the rest length is outside of the small amplitude limit
+    public static final double LINEAR_STRETCH_LIMIT = 0.1;
+
+    private NetworkModel model;
+    private double[] equilibrium;
+    private int size;
+    private double[] eigenvalues;
+    //-- modes[j] is mode j, mass normalised, x and y displacement for each node
+    private double[][] modes;
+    //-- Largest eigenvalue, or an estimate of it, to tell rigid body motions from elastic modes
+    private double largestEigenvalue;
+    //-- Largest amplitude of stretch relative to the rest length in the last spectrum
+    private double largestRelativeStretch = 0;
+
+    /**
+     * @param model - packed network
+     * @param equilibriumVars - relaxed state, x, y, vx, vy for each node
+     */
+    public ModalAnalysis(NetworkModel model, double[] equilibriumVars) {
+        this.model = model;
+        this.equilibrium = equilibriumVars.clone();
+        this.size = 2 * model.getNodeCount();
+    }
+
+    /**
+     * Calculates the 2x2 stiffness block of each edge at equilibrium,
+     * k (u u^T + (1 - R/L)(I - u u^T)), where u is the unit vector along the edge,
+     * L its length and R its rest length. The second term is left out for a compressed edge,
+     * which would make the linearised network unstable, so the stiffness is positive semidefinite.
+     * @return xx, xy and yy of the block of each edge
+     */
+    private double[] assembleEdgeBlocks() {
+        int edgeCount = model.getEdgeCount();
+        AdjacencyIndex adjacency = model.getAdjacency();
+        double[] block = new double[3 * edgeCount];
+        for (int e=0; e<edgeCount; e++) {
+            int a = adjacency.getEdgeFrom(e);
+            int b = adjacency.getEdgeTo(e);
+            double xx = equilibrium[4*b] - equilibrium[4*a];
+            double yy = equilibrium[1 + 4*b] - equilibrium[1 + 4*a];
+            double len = Math.sqrt(xx*xx + yy*yy);
+            double k = model.getSpringConst(e);
+            double ux = xx/len, uy = yy/len;
+            double tension = Math.max(0, 1 - model.getRestLength(e)/len);
+            block[3*e] = k * (ux*ux + tension*(1 - ux*ux));
+            block[3*e + 1] = k * (ux*uy - tension*ux*uy);
+            block[3*e + 2] = k * (uy*uy + tension*(1 - uy*uy));
+        }
+        return block;
+    }
+
+    /**
+     * Assembles the stiffness matrix at equilibrium, x and y for each node.
+     * Each edge adds its block between its two nodes.
+     * @return symmetric matrix
+     */
+    public double[][] assembleStiffness() {
+        double[][] stiffness = new double[size][size];
+        double[] block = assembleEdgeBlocks();
+        AdjacencyIndex adjacency = model.getAdjacency();
+        for (int e=0; e<model.getEdgeCount(); e++) {
+            int a = adjacency.getEdgeFrom(e);
+            int b = adjacency.getEdgeTo(e);
+            for (int i=0; i<2; i++) {
+                for (int j=0; j<2; j++) {
+                    double value = block[3*e + i + j];
+                    stiffness[2*a + i][2*a + j] += value;
+                    stiffness[2*b + i][2*b + j] += value;
+                    stiffness[2*a + i][2*b + j] -= value;
+                    stiffness[2*b + i][2*a + j] -= value;
+                }
+            }
+        }
+        return stiffness;
+    }
+
+    /**
+     * Solves the eigenproblem, results are returned by getNaturalFrequencies and getEnergySpectrum.
+     */
+    public void solve() {
+        double[][] a = assembleStiffness();
+        double[] inverseRoot = getInverseRootMass();
+        for (int i=0; i<size; i++) {
+            for (int j=0; j<size; j++) {
+                a[i][j] *= inverseRoot[i] * inverseRoot[j];
+            }
+        }
+
+        double[][] vectors = new double[size][size];
+        eigenvalues = new double[size];
+        jacobi(a, eigenvalues, vectors);
+
+        modes = new double[size][size];
+        for (int j=0; j<size; j++) {
+            for (int i=0; i<size; i++) {
+                modes[j][i] = vectors[i][j] * inverseRoot[i];
+            }
+        }
+        largestEigenvalue = 0;
+        for (int j=0; j<size; j++) {
+            largestEigenvalue = Math.max(largestEigenvalue, Math.abs(eigenvalues[j]));
+        }
+    }
+
+    /**
+     * Solves the eigenproblem for the lowest modes only, up to the frequency limit and at most
+     * modeLimit of them, rigid body modes included. Results are returned by getNaturalFrequencies
+     * and getEnergySpectrum, which sums the modes that are found.
+     * @param modeLimit - largest number of modes
+     * @param frequencyLimit - highest natural frequency that is wanted
+     */
+    public void solveLowest(int modeLimit, double frequencyLimit) {
+        double[] inverseRoot = getInverseRootMass();
+        //-- Row of each free variable in the sparse problem, -1 for nodes that do not move
+        int[] freeIndex = new int[size];
+        int freeCount = 0;
+        for (int i=0; i<size; i++) {
+            freeIndex[i] = (inverseRoot[i] > 0) ? freeCount++ : -1;
+        }
+        SparseSymmetricMatrix a = assembleSparseStiffness(inverseRoot, freeIndex, freeCount);
+
+        double diagonal = 0, largestDiagonal = 0;
+        for (int i=0; i<freeCount; i++) {
+            diagonal += a.getDiagonal(i);
+            largestDiagonal = Math.max(largestDiagonal, a.getDiagonal(i));
+        }
+        double shift = -SHIFT_FRACTION * ((freeCount > 0 && diagonal > 0) ? diagonal/freeCount : 1);
+        ShiftInvertLanczos lanczos = new ShiftInvertLanczos(a, shift);
+        double omega = 2 * Math.PI * frequencyLimit;
+        int count = lanczos.solve(modeLimit, omega * omega);
+
+        eigenvalues = lanczos.getEigenvalues();
+        double[][] vectors = lanczos.getEigenvectors();
+        modes = new double[count][size];
+        for (int j=0; j<count; j++) {
+            for (int i=0; i<size; i++) {
+                if (freeIndex[i] >= 0) {
+                    modes[j][i] = vectors[j][freeIndex[i]] * inverseRoot[i];
+                }
+            }
+        }
+        //-- Diagonal is the scale of the largest eigenvalues, which are not calculated
+        largestEigenvalue = largestDiagonal;
+    }
+
+    /**
+     * Returns 1/sqrt(mass) for x and y of each node, 0 for a node of infinite mass, which does not move
+     * @return array of double
+     */
+    private double[] getInverseRootMass() {
+        double[] inverseRoot = new double[size];
+        for (int i=0; i<size; i++) {
+            double mass = model.getMass(i/2);
+            inverseRoot[i] = (mass > 0 && !Double.isInfinite(mass)) ? 1/Math.sqrt(mass) : 0;
+        }
+        return inverseRoot;
+    }
+
+    /**
+     * Assembles the mass scaled stiffness M^-1/2 K M^-1/2 of free variables in CSR format.
+     * Each free node has two rows, with a 2x2 block for itself and one for each Edge to a free node.
+     * @param inverseRoot - 1/sqrt(mass) of each variable
+     * @param freeIndex - row of each variable, -1 if it does not move
+     * @param freeCount - number of free variables
+     * @return SparseSymmetricMatrix
+     */
+    public SparseSymmetricMatrix assembleSparseStiffness(double[] inverseRoot, int[] freeIndex, int freeCount) {
+        int nodeCount = model.getNodeCount();
+        AdjacencyIndex adjacency = model.getAdjacency();
+        double[] block = assembleEdgeBlocks();
+
+        int[] rowStart = new int[freeCount + 1];
+        for (int n=0; n<nodeCount; n++) {
+            if (freeIndex[2*n] < 0)
+                continue;
+            int length = 2;
+            for (int entry=adjacency.getRowStart(n); entry<adjacency.getRowStart(n + 1); entry++) {
+                if (freeIndex[2*adjacency.getNeighbour(entry)] >= 0)
+                    length += 2;
+            }
+            rowStart[freeIndex[2*n] + 1] = length;
+            rowStart[freeIndex[2*n] + 2] = length;
+        }
+        for (int i=0; i<freeCount; i++) {
+            rowStart[i + 1] += rowStart[i];
+        }
+
+        int[] columns = new int[rowStart[freeCount]];
+        double[] values = new double[rowStart[freeCount]];
+        for (int n=0; n<nodeCount; n++) {
+            int row = freeIndex[2*n];
+            if (row < 0)
+                continue;
+            int x = rowStart[row], y = rowStart[row + 1];
+            double sxx = 0, sxy = 0, syy = 0;
+            columns[x] = row;
+            columns[x + 1] = row + 1;
+            columns[y] = row;
+            columns[y + 1] = row + 1;
+            int next = 2;
+            for (int entry=adjacency.getRowStart(n); entry<adjacency.getRowStart(n + 1); entry++) {
+                int e = adjacency.getIncidentEdge(entry);
+                sxx += block[3*e];
+                sxy += block[3*e + 1];
+                syy += block[3*e + 2];
+                int other = adjacency.getNeighbour(entry);
+                int column = freeIndex[2*other];
+                if (column < 0)
+                    continue;
+                double scale = inverseRoot[2*n] * inverseRoot[2*other];
+                columns[x + next] = column;
+                columns[x + next + 1] = column + 1;
+                columns[y + next] = column;
+                columns[y + next + 1] = column + 1;
+                values[x + next] = -block[3*e] * scale;
+                values[x + next + 1] = -block[3*e + 1] * scale;
+                values[y + next] = -block[3*e + 1] * scale;
+                values[y + next + 1] = -block[3*e + 2] * scale;
+                next += 2;
+            }
+            double scale = inverseRoot[2*n] * inverseRoot[2*n];
+            values[x] = sxx * scale;
+            values[x + 1] = sxy * scale;
+            values[y] = sxy * scale;
+            values[y + 1] = syy * scale;
+        }
+        return new SparseSymmetricMatrix(rowStart, columns, values);
+    }
+
+    /**
+     * Returns natural frequencies of all modes that are found in ascending order, in the same units as the
+     * frequency of the driving force (w = 2 pi f). Rigid body modes have frequency 0.
+     * @return array of double
+     */
+    public double[] getNaturalFrequencies() {
+        double[] frequencies = new double[eigenvalues.length];
+        for (int j=0; j<eigenvalues.length; j++) {
+            frequencies[j] = Math.sqrt(Math.max(eigenvalues[j], 0)) / (2 * Math.PI);
+        }
+        Arrays.sort(frequencies);
+        return frequencies;
+    }
+
+    /**
+     * Predicts average maximum energy of edges for each frequency of the driving force,
+     * the value that a simulated pass records for each frequency point.
+     * @param frequencies - frequencies of the driving force
+     * @param amplitude - amplitude of the driving force
+     * @param damping - damping force coefficient
+     * @param nodeOffset - offset between variables and drawn position of a node, half of node width
+     * @return average maximum energy for each frequency
+     */
+    public double[] getEnergySpectrum(double[] frequencies, double amplitude, double damping, double nodeOffset) {
+        int nodeCount = model.getNodeCount();
+        int modeCount = eigenvalues.length;
+
+        //-- Modal forces and damping do not depend on frequency.
+        //-- Force on y of node n is m q A e^(i k x), acceleration of the drive times mass.
+        double[] forceRe = new double[modeCount], forceIm = new double[modeCount];
+        double[] modalDamping = new double[modeCount];
+        boolean[] elastic = new boolean[modeCount];
+        for (int j=0; j<modeCount; j++) {
+            elastic[j] = eigenvalues[j] > RIGID_TOLERANCE * largestEigenvalue;
+            if (!elastic[j])
+                continue;
+            double re = 0, im = 0, norm = 0;
+            for (int n=0; n<nodeCount; n++) {
+                double mass = model.getMass(n);
+                double y = modes[j][2*n + 1];
+                norm += modes[j][2*n]*modes[j][2*n] + y*y;
+                if (y == 0 || Double.isInfinite(mass))
+                    continue;
+                double phase = WAVE_NUMBER * (equilibrium[4*n] - nodeOffset);
+                double force = mass * model.getCharge(n) * amplitude;
+                re += y * force * Math.cos(phase);
+                im += y * force * Math.sin(phase);
+            }
+            forceRe[j] = re;
+            forceIm[j] = im;
+            modalDamping[j] = damping * norm;
+        }
+
+        double[] spectrum = new double[frequencies.length];
+        double[] dispRe = new double[size], dispIm = new double[size];
+        largestRelativeStretch = 0;
+        for (int f=0; f<frequencies.length; f++) {
+            double omega = 2 * Math.PI * frequencies[f];
+            Arrays.fill(dispRe, 0);
+            Arrays.fill(dispIm, 0);
+            for (int j=0; j<modeCount; j++) {
+                if (!elastic[j])
+                    continue;
+                //-- eta = force / (lambda - w^2 - i w c)
+                double dr = eigenvalues[j] - omega*omega;
+                double di = -omega * modalDamping[j];
+                double denominator = dr*dr + di*di;
+                double etaRe = (forceRe[j]*dr + forceIm[j]*di) / denominator;
+                double etaIm = (forceIm[j]*dr - forceRe[j]*di) / denominator;
+                for (int i=0; i<size; i++) {
+                    dispRe[i] += modes[j][i] * etaRe;
+                    dispIm[i] += modes[j][i] * etaIm;
+                }
+            }
+            spectrum[f] = getAverageEdgeEnergy(model, equilibrium, dispRe, dispIm);
+            largestRelativeStretch = Math.max(largestRelativeStretch,
+                    getLargestRelativeStretch(model, equilibrium, dispRe, dispIm));
+        }
+        return spectrum;
+    }
+
+    /**
+     * Returns the largest amplitude of stretch relative to the rest length of its edge,
+     * over all edges and frequencies of the last getEnergySpectrum. The prediction is close to
+     * the simulated spectrum only while this is well below LINEAR_STRETCH_LIMIT.
+     * @return double
+     */
+    public double getLargestRelativeStretch() {
+        return largestRelativeStretch;
+    }
+
+    /**
+     * Returns maximum energy of edges over one period of a harmonic motion, averaged over edges.
+     * Energy of an edge is 1/2 k (|s0| + |ds|)^2, where s0 is its stretch at equilibrium and
+     * ds is the complex amplitude of its stretch, linearised along the edge.
+     * @param model - packed network
+     * @param equilibrium - relaxed state, x, y, vx, vy for each node
+     * @param dispRe - real part of displacement amplitude, x and y for each node
+     * @param dispIm - imaginary part of displacement amplitude, x and y for each node
+     * @return average maximum energy
+     */
+    static double getAverageEdgeEnergy(NetworkModel model, double[] equilibrium, double[] dispRe, double[] dispIm) {
+        AdjacencyIndex adjacency = model.getAdjacency();
+        int edgeCount = model.getEdgeCount();
+        double energy = 0;
+        for (int e=0; e<edgeCount; e++) {
+            int a = adjacency.getEdgeFrom(e);
+            int b = adjacency.getEdgeTo(e);
+            double len = getLength(equilibrium, a, b);
+            double stretch = Math.abs(len - model.getRestLength(e))
+                    + getStretchAmplitude(equilibrium, dispRe, dispIm, a, b, len);
+            energy += 0.5 * model.getSpringConst(e) * stretch * stretch;
+        }
+        return energy / edgeCount;
+    }
+
+    /**
+     * Returns the largest amplitude of stretch of a harmonic motion relative to the rest length,
+     * over all edges. Edges of zero rest length are compared with their length at equilibrium.
+     * @param model - packed network
+     * @param equilibrium - relaxed state, x, y, vx, vy for each node
+     * @param dispRe - real part of displacement amplitude, x and y for each node
+     * @param dispIm - imaginary part of displacement amplitude, x and y for each node
+     * @return largest |ds| / rest length
+     */
+    static double getLargestRelativeStretch(NetworkModel model, double[] equilibrium, double[] dispRe, double[] dispIm) {
+        AdjacencyIndex adjacency = model.getAdjacency();
+        double largest = 0;
+        for (int e=0; e<model.getEdgeCount(); e++) {
+            int a = adjacency.getEdgeFrom(e);
+            int b = adjacency.getEdgeTo(e);
+            double len = getLength(equilibrium, a, b);
+            double restLength = model.getRestLength(e);
+            double reference = (restLength > 0) ? restLength : len;
+            largest = Math.max(largest, getStretchAmplitude(equilibrium, dispRe, dispIm, a, b, len) / reference);
+        }
+        return largest;
+    }
+
+    private static double getLength(double[] equilibrium, int a, int b) {
+        double xx = equilibrium[4*b] - equilibrium[4*a];
+        double yy = equilibrium[1 + 4*b] - equilibrium[1 + 4*a];
+        return Math.sqrt(xx*xx + yy*yy);
+    }
+
+    /**
+     * Returns |ds|, amplitude of the stretch of edge from a to b, linearised along the edge
+     */
+    private static double getStretchAmplitude(double[] equilibrium, double[] dispRe, double[] dispIm,
+                                              int a, int b, double len) {
+        double ux = (equilibrium[4*b] - equilibrium[4*a]) / len;
+        double uy = (equilibrium[1 + 4*b] - equilibrium[1 + 4*a]) / len;
+        double re = ux*(dispRe[2*b] - dispRe[2*a]) + uy*(dispRe[2*b+1] - dispRe[2*a+1]);
+        double im = ux*(dispIm[2*b] - dispIm[2*a]) + uy*(dispIm[2*b+1] - dispIm[2*a+1]);
+        return Math.sqrt(re*re + im*im);
+    }
+
+    /**
+     * Cyclic Jacobi method for a symmetric matrix. Rotations are applied until all
+     * off diagonal elements are negligible.
+     * @param a - symmetric matrix, destroyed
+     * @param values - output eigenvalues
+     * @param vectors - output eigenvectors, in columns
+     */
+    static void jacobi(double[][] a, double[] values, double[][] vectors) {
+        int n = values.length;
+        for (int i=0; i<n; i++) {
+            vectors[i][i] = 1;
+        }
+        for (int sweep=0; sweep<MAX_SWEEPS; sweep++) {
+            double off = 0, diagonal = 0;
+            for (int i=0; i<n; i++) {
+                diagonal += a[i][i]*a[i][i];
+                for (int j=i+1; j<n; j++) {
+                    off += a[i][j]*a[i][j];
+                }
+            }
+            if (off <= 1e-30 * diagonal || off == 0)
+                break;
+
+            for (int p=0; p<n-1; p++) {
+                for (int q=p+1; q<n; q++) {
+                    double apq = a[p][q];
+                    if (apq == 0)
+                        continue;
+                    double theta = (a[q][q] - a[p][p]) / (2*apq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta*theta + 1));
+                    if (theta == 0)
+                        t = 1;
+                    double c = 1 / Math.sqrt(t*t + 1);
+                    double s = t * c;
+                    for (int k=0; k<n; k++) {
+                        double akp = a[k][p], akq = a[k][q];
+                        a[k][p] = c*akp - s*akq;
+                        a[k][q] = s*akp + c*akq;
+                    }
+                    for (int k=0; k<n; k++) {
+                        double apk = a[p][k], aqk = a[q][k];
+                        a[p][k] = c*apk - s*aqk;
+                        a[q][k] = s*apk + c*aqk;
+                    }
+                    for (int k=0; k<n; k++) {
+                        double vkp = vectors[k][p], vkq = vectors[k][q];
+                        vectors[k][p] = c*vkp - s*vkq;
+                        vectors[k][q] = s*vkp + c*vkq;
+                    }
+                }
+            }
+        }
+        for (int i=0; i<n; i++) {
+            values[i] = a[i][i];
+        }
+    }
+}
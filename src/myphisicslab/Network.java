@@ -16,6 +16,7 @@ public class Network {
     private String fileName = "";
     private ArrayList<Node> nodeList;
     private ArrayList<Edge> edgeList;
+    private boolean relaxed = false;
 
     public Network() {
     }
@@ -84,4 +85,21 @@ public class Network {
         this.fileName = fileName;
     }
 
+    /**
+     * Returns true if initial positions of nodes are relaxed equilibrium positions,
+     * for example when the network is read from a snapshot saved after relaxation.
+     * @return boolean
+     */
+    public boolean isRelaxed() {
+        return this.relaxed;
+    }
+
+    /**
+     * Sets if initial positions of nodes are relaxed equilibrium positions.
+     * @param relaxed
+     */
+    public void setRelaxed(boolean relaxed) {
+        this.relaxed = relaxed;
+    }
+
 }
@@ -26,13 +26,9 @@
 package myphisicslab;
 
 import net.miginfocom.swing.MigLayout;
-import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartFrame;
 import org.jfree.chart.JFreeChart;
-import org.jfree.chart.ChartUtilities;
-import org.jfree.data.xy.XYDataItem;
 import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
 import javax.swing.*;
 import java.awt.*;
@@ -42,14 +38,22 @@ import java.io.*;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /////////////////////////////////////////////////////////////////////////////////
-public class Network2DSim extends Simulation implements ActionListener
+public class Network2DSim extends Simulation implements ActionListener, DampedDiffEq, TimedDiffEq
 {
   private ArrayList<Node> allNodesList;
   private ArrayList<Edge> allEdgesList;
+  private NetworkModel model;
+  private double[] springForce;
+  private double centerOfMoleculeY = 0; //-- centre of the network in Y, relative to drawn positions
+  private double drivePhase = 0; //-- w*t of the driving wave, worked out once per evaluate
+  private double drivePhaseOffset = 0; //-- added to w*t, keeps the wave continuous when a warm start changes frequency
+  private double totalEdgeEnergy = 0; //-- summed energy of all edges, worked out once per evaluate
+  private final DecimalFormat elapsedFormat = new DecimalFormat("############.#"); //-- used on the event thread only
   private double gravity = 0.0, damping=20.0, time=0.0, amplitude=0.0, frequency=0.0;
   private double minDispY[], maxDispY[];
   private double minDispY1 =0.0, maxDispY1 = 0.0, timeSplit = 0.0, timeSplitStart = 0.0;
@@ -59,9 +63,18 @@ public class Network2DSim extends Simulation implements ActionListener
 
   JButton destinationFolder, simulationStartBtn, simulationStop;
   JTextField simPasses, forceAmplitude, frequencyMax, timeMultiplier, timeStep, frequencyStep, dampingForce;
+  JTextField steadyTolerance, confidenceWidth;
   JTextField sourceFilePath, destinationFilePath;
   JLabel passTracker, timeElapsed;
+  //-- Written by the simulation thread, shown in the labels by progressTimer on the event thread
+  private final SimulationProgress progress = new SimulationProgress();
+  private javax.swing.Timer progressTimer;
+  private static final int PROGRESS_MILLIS = 100;
+  JCheckBox parallelSweep, simulatedClock, warmStart;
+  JComboBox<String> solverChoice;
   String sourceNetworkPath = "";
+  private final RelaxedLayoutCache layoutCache = RelaxedLayoutCache.createDefault();
+  private String layoutKey; //-- hash of the network content and relaxation in the layout cache, null when not cached
 
   private static final String   DAMPING="damping",
                                 GRAVITY="gravity",
@@ -83,7 +96,9 @@ public class Network2DSim extends Simulation implements ActionListener
   private int passCount = 1;
   private int passLimit = 3; //always +1
   private double passTime = 10.0;
-  private List<List> allSimulationValues = new ArrayList<>();
+  private SpectrumResults spectrumResults; //-- energies of all passes with statistics of each frequency
+  private double confidenceIntervalWidth = 0; //-- 0 runs all passes
+  private AdaptivePassController passController;
   public double frequencyLimit = 2.0;
   private NRTControlPanel controlPanel;
   private double incrementFrequency = 0.0125;
@@ -93,6 +108,9 @@ public class Network2DSim extends Simulation implements ActionListener
   private boolean nodesPositionedDebug = false;
 
   private long simulationStartTime;
+  private FrequencySweep sweep;
+  private double steadyStateTolerance = 0.0;
+  private SteadyStateDetector steadyStateDetector; //-- null if every point runs for pass time
 
   /**
    * Original constructor.
@@ -161,6 +179,7 @@ public class Network2DSim extends Simulation implements ActionListener
       //if (super.realTime) //remove to enable visualisation
         cvs.addElement(allEdgesList.get(i));
     }
+    initializeModel();
 
     initializeWalls();
 
@@ -199,6 +218,9 @@ public class Network2DSim extends Simulation implements ActionListener
 
     sourceNetworkPath = network.getFilePath();
     sourceFileName = network.getFileName();
+    //-- Relaxed positions are looked up in the layout cache when the simulation starts, since
+    //-- they depend on pass time, time multiplier and solver
+    simulationPositions = network.isRelaxed();
 
     createControls();
 
@@ -277,10 +299,18 @@ public class Network2DSim extends Simulation implements ActionListener
       frequencyStep = new JTextField("0.0125");
       simPasses = new JTextField("3");
       dampingForce = new JTextField("20.0");
+      steadyTolerance = new JTextField("0");
+      confidenceWidth = new JTextField("0");
+      parallelSweep = new JCheckBox("Parallel sweep");
+      simulatedClock = new JCheckBox("Simulated time", true);
+      warmStart = new JCheckBox("Warm start");
+      solverChoice = new JComboBox<String>(SpectrumParameters.SOLVERS);
 
       //Labels for seeing how far the simulation has gone
       timeElapsed = new JLabel("0 ms");
       passTracker = new JLabel("");
+      progressTimer = new javax.swing.Timer(PROGRESS_MILLIS, this);
+      progressTimer.start();
 
       destinationFolder = new JButton("Change Folder");
       simulationStartBtn = new JButton("Start");
@@ -299,7 +329,7 @@ public class Network2DSim extends Simulation implements ActionListener
       controlPanel.setLayout(new MigLayout(
               "fill",                           //Layout constraints
               "10[][][][][][][]10",                 //Column constraints - 6 cols + 20 from each side
-              "10[][][][][][][][][][][][]10"        //Row constraints - 10 rows + 20 from each side
+              "10[][][][][][][][][][][][][]10"      //Row constraints - 11 rows + 20 from each side
       ));
 
       controlPanel.add(new JLabel("Source file:"), "cell 1 1, span 2 1");
@@ -328,17 +358,29 @@ public class Network2DSim extends Simulation implements ActionListener
 
       controlPanel.add(new JLabel("Pass count:"), "cell 1 9");
       controlPanel.add(new JLabel("Damping force:"), "cell 2 9");
+      controlPanel.add(new JLabel("Solver:"), "cell 5 9");
 
 
       controlPanel.add(simPasses, "cell 1 10, growx");
       controlPanel.add(dampingForce, "cell 2 10, growx");
+      controlPanel.add(parallelSweep, "cell 3 10");
+      controlPanel.add(simulatedClock, "cell 4 10");
+      controlPanel.add(solverChoice, "cell 5 10, growx");
+
+      //-- 0 runs every frequency point for the full time step
+      controlPanel.add(new JLabel("Steady tolerance:"), "cell 1 11");
+      controlPanel.add(steadyTolerance, "cell 2 11, growx");
+      controlPanel.add(warmStart, "cell 3 11");
+      //-- Relative width of the 95% interval of mean energy that stops further passes, 0 runs all passes
+      controlPanel.add(new JLabel("CI width:"), "cell 4 11");
+      controlPanel.add(confidenceWidth, "cell 5 11, growx");
 
       //labels that do get updated during simulation
-      controlPanel.add(passTracker, "cell 1 11, growx");
-      controlPanel.add(timeElapsed, "cell 4 11, growx");
+      controlPanel.add(passTracker, "cell 1 12, growx");
+      controlPanel.add(timeElapsed, "cell 4 12, growx");
 
-      controlPanel.add(simulationStartBtn, "cell 1 12, span 2 1, grow");
-      controlPanel.add(simulationStop, "cell 4 12, span 2 1, grow");
+      controlPanel.add(simulationStartBtn, "cell 1 13, span 2 1, grow");
+      controlPanel.add(simulationStop, "cell 4 13, span 2 1, grow");
 
 
       controlsFrame.add(controlPanel);
@@ -356,6 +398,10 @@ public class Network2DSim extends Simulation implements ActionListener
    * Created by Andrejs Zile.
    */
   public void setSimulationVariables() {
+    //-- Simulated time advances only by the time step, so results do not depend on speed of the machine
+    super.simulatedTime = simulatedClock.isSelected();
+    simulatedClock.setEnabled(false);
+
     //resets the elapsed time to current time in the Simulation class
     super.timeNowReset = true;
 
@@ -380,12 +426,30 @@ public class Network2DSim extends Simulation implements ActionListener
     passTime = Double.parseDouble(timeStep.getText());
     timeStep.setEditable(false);
 
-    passTracker.setText("Current: 1/" + passLimit + " pass");
-    passTracker.repaint();
+    spectrumResults = new SpectrumResults(FrequencySweep.getFrequencies(frequencyLimit, incrementFrequency), passLimit);
+
+    progress.setPassText("Current: 1/" + passLimit + " pass");
+    progress.start();
+    updateProgressLabels();
 
     damping = Double.parseDouble(dampingForce.getText());
     dampingForce.setEditable(false);
 
+    steadyStateTolerance = Double.parseDouble(steadyTolerance.getText());
+    steadyTolerance.setEditable(false);
+    confidenceIntervalWidth = Double.parseDouble(confidenceWidth.getText());
+    confidenceWidth.setEditable(false);
+    passController = new AdaptivePassController(confidenceIntervalWidth, passLimit);
+    steadyStateDetector = (steadyStateTolerance > 0)
+            ? new SteadyStateDetector(steadyStateTolerance, SteadyStateDetector.DEFAULT_PERIODS) : null;
+
+    parallelSweep.setEnabled(false);
+    warmStart.setEnabled(false);
+    drivePhaseOffset = 0;
+
+    odeSolver = makeDiffEqSolver();
+    solverChoice.setEnabled(false);
+
     simulationStartBtn.setEnabled(false);
     simulationStop.setEnabled(true);
 
@@ -451,6 +515,18 @@ public class Network2DSim extends Simulation implements ActionListener
       validValues = false;
     }
 
+    double valSteadyTolerance = Double.parseDouble(steadyTolerance.getText());
+    if (valSteadyTolerance < 0 || valSteadyTolerance >= 1) {
+      JOptionPane.showMessageDialog(null, "Steady state tolerance must be between 0 and 1, 0 turns it off.");
+      validValues = false;
+    }
+
+    double valConfidenceWidth = Double.parseDouble(confidenceWidth.getText());
+    if (valConfidenceWidth < 0) {
+      JOptionPane.showMessageDialog(null, "Confidence interval width must not be negative, 0 runs all passes.");
+      validValues = false;
+    }
+
     //Check destination folder
     if (destinationFilePath.getText().length() == 0) {
       JOptionPane.showMessageDialog(null, "Destination folder empty. Please set destination folder.");
@@ -526,6 +602,16 @@ public class Network2DSim extends Simulation implements ActionListener
       //if (super.realTime) //remove to enable visualisation
         cvs.addElement(allEdgesList.get(i));
     }
+    initializeModel();
+  }
+
+  /**
+   * Copies nodes and edges into packed arrays of NetworkModel, which the solver runs against.
+   * Node and Edge objects are only updated from it when they are drawn.
+   */
+  public void initializeModel() {
+    model = new NetworkModel(allNodesList, allEdgesList);
+    springForce = new double[2 * allNodesList.size()];
   }
 
   /**
@@ -597,19 +683,9 @@ public class Network2DSim extends Simulation implements ActionListener
     objSeriesAverage = new XYSeries("Total Average Energy");
     objSeriesCurrent = new XYSeries("Current Max Energy");
 
-    //-- Add series to object collection to display them on the graph.
-    XYSeriesCollection objCollection = new XYSeriesCollection();
-    objCollection.addSeries(objSeriesAverage);
-    objCollection.addSeries(objSeriesCurrent);
-
     //-- Create a chart object to load it with series for Average and Current data stream.
-    //-- Here all labels are specified and data collection as well.
-    objChart = ChartFactory.createXYLineChart (
-            "Spectra",
-            "Frequency",
-            "Energy average",
-            objCollection
-    );
+    //-- Labels are the same as in images exported by SpectrumExporter.
+    objChart = SpectrumExporter.createChart(objSeriesAverage, objSeriesCurrent);
 
 
     //-- Create a frame to show the graph and set it to visible.
@@ -703,10 +779,7 @@ public class Network2DSim extends Simulation implements ActionListener
     }
 
     //-- Set Maximum Energy of each node to be 0.
-    for (int e=0; e<allEdgesList.size(); e++) {
-      Edge currentEdge = allEdgesList.get(e);
-      currentEdge.setMaxEnergy(0);
-    }
+    model.resetMaxEnergy();
   }
 
   /**
@@ -728,17 +801,28 @@ public class Network2DSim extends Simulation implements ActionListener
     frequencyMax.setEditable(true);
     timeStep.setEditable(true);
     dampingForce.setEditable(true);
-
+    steadyTolerance.setEditable(true);
+    confidenceWidth.setEditable(true);
+    parallelSweep.setEnabled(true);
+    warmStart.setEnabled(true);
+    simulatedClock.setEnabled(true);
+    solverChoice.setEnabled(true);
+
+    if (sweep != null) {
+      sweep.cancel();
+      sweep = null;
+    }
 
     simulationStart = false;
     simulationPositions = true; //do not need to evaluate positions again for next run
+    progress.stop();
 
     timeSplit = 0.0;
     frequency = 0.0;
     passCount = 1;
     damping = 20; //TODO change this
 
-    allSimulationValues.clear();
+    spectrumResults = null;
 
     super.simulationActive = false;
   }
@@ -751,7 +835,9 @@ public class Network2DSim extends Simulation implements ActionListener
    * @param e - Event
    */
   public void actionPerformed (ActionEvent e) {
-    if(e.getSource() == button_stop) {
+    if (e.getSource() == progressTimer) {
+      updateProgressLabels();
+    } else if(e.getSource() == button_stop) {
       stopMotion();
     } else if (e.getSource() == button_frequency) { //This is the RT simulation start button
       //super.timeNowReset = true;
@@ -761,8 +847,13 @@ public class Network2DSim extends Simulation implements ActionListener
     } else if (e.getSource() == simulationStartBtn) { //This is the NRT simulation start button
       if (validateSimulationVariables()) {
         setSimulationVariables();
+        loadRelaxedLayout();
         simulationStart = true;
         timeSplitStart = getTime();
+        //-- Positions are known from previous run, so parallel sweep can start straight away
+        if (simulationPositions && parallelSweep.isSelected()) {
+          startParallelSweep();
+        }
       };
     } else if (e.getSource() == simulationStop) {
       stopSimulation();
@@ -795,6 +886,36 @@ public class Network2DSim extends Simulation implements ActionListener
       allEdgesList.get(i).setX2(allEdgesList.get(i).getNodeTo().m_X1 + w);
       allEdgesList.get(i).setY2(allEdgesList.get(i).getNodeTo().m_Y1 + w);
     }
+
+    //-- Records of energy and displacement are copied from packed model only when drawn
+    model.syncRecords(allNodesList, allEdgesList);
+
+  }
+
+  /**
+   * Shows progress published by the simulation thread in the labels of the control panel.
+   * Called on the event thread by progressTimer, about 10 times per second.
+   */
+  private void updateProgressLabels() {
+    if (passTracker == null)
+      return;
+    progress.drainPoints(objSeriesCurrent);
+    passTracker.setText(progress.getPassText());
+    if (progress.isRunning()) {
+      timeElapsed.setText(elapsedFormat.format(progress.getElapsedSeconds())+"");
+      //FOR DEBUG
+      //timeElapsed.setText(Math.round(getTime()) + "");
+    }
+  }
+
+  /**
+   * Stops the progress timer together with the simulation.
+   */
+  @Override
+  protected void shutDown() {
+    if (progressTimer != null)
+      progressTimer.stop();
+    super.shutDown();
   }
 
   /**
@@ -857,17 +978,40 @@ public class Network2DSim extends Simulation implements ActionListener
      */
   public void evaluate(double[] x, double[] change)
   {
-    double DIST_TOL = 0.02;
-    double timeStep = 0.03;  // assume timeStep is this length or longer
+    evaluate(x, change, getTime());
+  }
 
-    double now = getTime();
+  /**
+   * Same as evaluate(x, change), with time of the stage passed by the solver,
+   * so that evaluation does not read the clock or allocate any objects.
+   * Phase of the driving wave is worked out once for the stage.
+   *
+   * @param x
+   * @param change
+   * @param now - time of the stage
+   */
+  public void evaluate(double[] x, double[] change, double now)
+  {
     timeSplit = (now - timeSplitStart);
+    drivePhase = 2 * Math.PI * frequency * now + drivePhaseOffset;
 
     //Work out initial positions (this is run before simulation starts)
     if (!simulationPositions && simulationStart) {
       evaluatePositions();
     }
 
+    //-- Each edge is visited once, adding its force to both nodes
+    model.accumulateSpringForces(x, springForce);
+    double w = allNodesList.get(0).m_Width/2;
+
+    //-- Centre of the network and edge energies depend only on vars, so they are worked out once per call
+    boolean steady = false;
+    if (simulationPositions && simulationStart) {
+      prepareForcedOscillations(w);
+      //-- Point ends early once the peak of summed edge energy has settled
+      steady = steadyStateDetector != null && steadyStateDetector.update(timeSplit, totalEdgeEnergy);
+    }
+
     // i = index of variable whose derivative we want to calc
     for (int i=0; i<vars.length; i++) {
       int j = i%4;  // % is mod, so j tells what derivative is wanted:
@@ -877,11 +1021,12 @@ public class Network2DSim extends Simulation implements ActionListener
         change[i] = x[i+2]; // derivative of position U is velocity V
       else  {
         // requested derivative is Vx or Vy for particle number 'obj'
-        double r = 0;  // result net force
-        double mass = allNodesList.get(obj).m_Mass;  // mass of our object
+        double mass = model.getMass(obj);  // mass of our object
 
         //this runs constantly, even when simulation is not started
-        r = evaluateSpringForces(r, x, mass, obj, j);
+        // result net force, spring forces were accumulated once for all nodes above
+        double r = (j == 2) ? springForce[2 * obj] / mass
+                : springForce[1 + 2 * obj] / mass - gravity * model.getAdjacency().getDegree(obj);
 
 
         if (damping != 0)
@@ -895,28 +1040,22 @@ public class Network2DSim extends Simulation implements ActionListener
         //Driven oscillations
         double amplitudeDriven = amplitude; //Force applied
         double frequencyDriven = frequency; //Omega
-        double relativePosition = allNodesList.get(obj).getY();
-
+        double relativePosition = vars[1 + 4*obj] - w;
 
-        if (simulationStart) {
-          DecimalFormat f = new DecimalFormat("############.#");
-          double elapsedTime = (System.currentTimeMillis() - simulationStartTime)/1000.0;
-          if (!super.realTime) {
-            timeElapsed.setText(f.format(elapsedTime)+"");
-            //FOR DEBUG
-            //timeElapsed.setText(Math.round(getTime()) + "");
-            timeElapsed.repaint();
-          }
-        }
 
         //Forced component activated (this is run once simulation is started and positions have been worked out)
         if (simulationPositions && simulationStart) {
-          r = evaluateForcedOscillations(amplitudeDriven, j, obj, relativePosition, r);
+          r = evaluateForcedOscillations(amplitudeDriven, j, obj, w, r);
         }
 
         //When time expires, trigger next run
-        if (simulationStart && simulationPositions && (timeSplit > passTime) && frequency <= frequencyLimit) {
+        if (simulationStart && simulationPositions && (timeSplit > passTime || steady) && frequency <= frequencyLimit) {
+          steady = false;
           nextRun(frequencyDriven, relativePosition);
+          //-- Nodes are back at initial positions, records start again from them
+          if (simulationPositions && simulationStart) {
+            prepareForcedOscillations(w);
+          }
         }
 
         change[i] = r;
@@ -925,7 +1064,16 @@ public class Network2DSim extends Simulation implements ActionListener
   }
 
   /**
-   * Evaluates force of the spring that connects two masses together.
+   * Returns damping rate of velocity variable i, the same term that evaluate subtracts.
+   * @param i - index of the variable
+   * @return double
+   */
+  public double getDampingRate(int i) {
+    return (damping != 0) ? damping / model.getMass(i/4) : 0;
+  }
+
+  /**
+   * Evaluates force of the springs that connect one mass to its neighbours.
    * @param r - is the resultant force
    * @param x - is an array of variables
    * @param mass - is the mass of the node
@@ -934,94 +1082,69 @@ public class Network2DSim extends Simulation implements ActionListener
    * @return r - resultant force
    *
    * Spring forces equations mainly are used from existing package,
-   * but modifications have been made with use of allEdgeList and allNodeList
-   * instead of matrix that was used originally.
+   * only springs connected to obj are visited through the adjacency index.
    */
   public double evaluateSpringForces(double r, double[] x, double mass, int obj, int j) {
-    // for each spring, get force from spring,
-    // look at LHS (left hand side) of msm matrix
-    for (int k=0; k<allEdgesList.size(); k++) {
-      // this spring is connected to our object
-      if (allEdgesList.get(k).getNodeFrom().getId() == obj) {
-        // the object on other end of the spring
-        int obj2 = allEdgesList.get(k).getNodeTo().getId();
-        // x distance between objects
-        double xx = x[4 * obj2] - x[4 * obj];
-        // y distance betw objects
-        double yy = x[1 + 4 * obj2] - x[1 + 4 * obj];
-        // total distance betw objects
-        double len = Math.sqrt(xx * xx + yy * yy);
-        Edge spr = allEdgesList.get(k);
-        // spring constant for this spring
-        double sc = spr.m_SpringConst;
-        // see earlier comments for more on the force equations.
-        // Fx = (sc/m)*(len - R)*xx/len or
-        // Fy = (sc/m)*(len - R)*yy/len - g
-        double f = (sc / mass) * (len - spr.m_RestLength) / len;
-        r += (j == 2) ? f * xx : -gravity + f * yy;
-      }
-    }
-
-    // same deal, but look at RHS (right hand side) of the msm matrix
-    for (int k=0; k<allEdgesList.size(); k++) {
-      // this spring is connected to our object
-      if (allEdgesList.get(k).getNodeTo().getId() == obj)  {
-        // the object on other end of the spring
-        int obj2 = allEdgesList.get(k).getNodeFrom().getId();
-        // x distance between objects
-        double xx = x[4 * obj2] - x[4 * obj];
-        // y distance betw objects
-        double yy = x[1 + 4 * obj2] - x[1 + 4 * obj];
-        // total distance betw objects
-        double len = Math.sqrt(xx * xx + yy * yy);
-        Edge spr = allEdgesList.get(k);
-        // spring constant for this spring
-        double sc = spr.m_SpringConst;
-        // see earlier comments for more on the force equations.
-        // Fx = (sc/m)*(len - R)*xx/len or
-        // Fy = (sc/m)*(len - R)*yy/len - g
-        double f = (sc / mass) * (len - spr.m_RestLength) / len;
-        r += (j == 2) ? f * xx : -gravity + f * yy;
-      }
+    AdjacencyIndex adjacency = model.getAdjacency();
+    int end = adjacency.getRowStart(obj + 1);
+    for (int entry=adjacency.getRowStart(obj); entry<end; entry++) {
+      // the object on other end of the spring
+      int obj2 = adjacency.getNeighbour(entry);
+      // x distance between objects
+      double xx = x[4 * obj2] - x[4 * obj];
+      // y distance betw objects
+      double yy = x[1 + 4 * obj2] - x[1 + 4 * obj];
+      // total distance betw objects
+      double len = Math.sqrt(xx * xx + yy * yy);
+      int spr = adjacency.getIncidentEdge(entry);
+      // Fx = (sc/m)*(len - R)*xx/len or
+      // Fy = (sc/m)*(len - R)*yy/len - g
+      double f = (model.getSpringConst(spr) / mass) * (len - model.getRestLength(spr)) / len;
+      r += (j == 2) ? f * xx : -gravity + f * yy;
     }
     return r;
   }
 
+  /**
+   * Works out values that are shared by all nodes in evaluateForcedOscillations:
+   * centre of the network in direction of Y, and maximum and summed energy of edges.
+   * Both depend only on vars, so they are evaluated once per call of evaluate
+   * instead of once for each node.
+   * @param w - half of the node width, offset between variables and drawn position of a node
+   */
+  private void prepareForcedOscillations(double w) {
+    centerOfMoleculeY = getCenterOfMoleculeY(vars) - w;
+    totalEdgeEnergy = model.recordEdgeEnergies(vars);
+  }
+
   /**
    * Evaluate forces of forced oscillations.
    * @param amplitudeDriven - amplitude, which determines maximum strength of force
    * @param j - number of element in the array (vx, vy, ux, uy)
    * @param obj - number of element in the array of Nodes
-   * @param relativePosition - relative position of node to the center of the molecule
+   * @param w - half of the node width, offset between variables and drawn position of a node
    * @param r - input force
    * @return r - resultant force
    *
    * Created by Andrejs Zile.
    */
-  public double evaluateForcedOscillations(double amplitudeDriven, int j, int obj, double relativePosition, double r) {
+  public double evaluateForcedOscillations(double amplitudeDriven, int j, int obj, double w, double r) {
 
-    Node currentNode = allNodesList.get(obj);
     //System.out.println("Amplitude driven: " + amplitudeDriven);
 
     if (amplitudeDriven>0 && j == 3) {
         //------------------------------------------------------
         //--Assuming electric field produces positive charge----
         //------------------------------------------------------
-        //System.out.println("node id: " + currentNode.getId());
-        //System.out.println("x: " + currentNode.getX() + ",y: "+ currentNode.getY() + "");
-        if (currentNode.getChargeIfPositive()) {
-          r += getElectroForce(currentNode.getX());
-          //r += amplitudeDriven * Math.cos(frequencyDriven * (timeElapsed + offset));
-        } else {
-          r -= getElectroForce(currentNode.getX());
-          //r -= amplitudeDriven * Math.cos(frequencyDriven * (timeElapsed + offset));
-        }
+        //-- charge is 1 for positive and -1 for negative nodes
+        r += model.getCharge(obj) * getElectroForce(vars[4*obj] - w);
+        //r += amplitudeDriven * Math.cos(frequencyDriven * (timeElapsed + offset));
       }
       //-----------------------------------------------------
       //-----------------------------------------------------
       //-----------------------------------------------------
-      relativePosition = currentNode.getY();
-      double centerOfMoleculeY = getCenterOfMoleculeY();
+      //-- centre of the network is worked out by prepareForcedOscillations
+      double relativePosition = vars[1 + 4*obj] - w;
 
       if (relativePosition > centerOfMoleculeY) {
         relativePosition = relativePosition - centerOfMoleculeY;
@@ -1030,20 +1153,7 @@ public class Network2DSim extends Simulation implements ActionListener
       }
 
       //--------- Record Displacement of Node ---------------
-      if (currentNode.minDispY > relativePosition) {
-        currentNode.minDispY = relativePosition;
-      }
-
-      if (currentNode.maxDispY < relativePosition) {
-        currentNode.maxDispY = relativePosition;
-      }
-
-      for (int e=0; e<allEdgesList.size(); e++) {
-        Edge currentEdge = allEdgesList.get(e);
-        if (currentEdge.getMaxEnergy() < currentEdge.getEnergy()) {
-          currentEdge.setMaxEnergy(currentEdge.getEnergy());
-        }
-      }
+      model.recordDisplacement(obj, relativePosition);
 
     return r;
   }
@@ -1065,7 +1175,148 @@ public class Network2DSim extends Simulation implements ActionListener
         //System.out.println("Node initial positions: " + node.getId() +" x: " + node.getX() + " y: " +node.getY());
       }
       simulationPositions = true;
+      storeRelaxedLayout();
+      if (!realTime && parallelSweep.isSelected()) {
+        startParallelSweep();
+      }
+    }
+  }
+
+  /**
+   * Takes initial positions from the layout cache if the network has been relaxed before with the
+   * same pass time, time multiplier and solver. Relaxation on the wall clock depends on speed of
+   * the machine, so its positions are neither taken from nor stored in the cache.
+   */
+  private void loadRelaxedLayout() {
+    layoutKey = null;
+    if (simulationPositions || !simulatedTime) {
+      return;
+    }
+    Network network = new Network();
+    network.setNodeList(allNodesList);
+    network.setEdgeList(allEdgesList);
+    layoutKey = RelaxedLayoutCache.getKey(network, RelaxedLayoutCache.getRelaxation(
+            RelaxedLayoutCache.METHOD_SIMULATION, passTime - 1, 0.01 * super.timeMultiplier, getSolverName()));
+    if (layoutCache.load(network, layoutKey)) {
+      simulationPositions = true;
+      stopMotion();
+    }
+  }
+
+  /**
+   * Stores recorded initial positions of the network in the layout cache, so the next time the
+   * network is opened the positions do not need to be evaluated again. The snapshot next to the
+   * source file keeps only the parsed network.
+   */
+  private void storeRelaxedLayout() {
+    if (layoutKey == null) {
+      return;
     }
+    Network relaxedNetwork = new Network();
+    relaxedNetwork.setNodeList(allNodesList);
+    relaxedNetwork.setEdgeList(allEdgesList);
+    relaxedNetwork.setRelaxed(true);
+    layoutCache.store(relaxedNetwork, layoutKey);
+  }
+
+  /**
+   * Starts sweep of all passes on FrequencySweep engine instead of stepping frequency in evaluate.
+   * Every frequency point of every pass is run concurrently from the recorded initial positions,
+   * on a ForkJoinPool sized to the number of cores, passes differ in the phase of the driving wave.
+   * The sweep runs on its own thread, and each pass is merged into objSeriesCurrent and
+   * allSimulationValues on the event thread as soon as it is finished.
+   */
+  public void startParallelSweep() {
+    //-- Sequential sweep in evaluate is not triggered while the engine runs
+    simulationStart = false;
+    super.simulationActive = false;
+
+    double[] initialVars = new double[vars.length];
+    for (int i=0; i<allNodesList.size(); i++) {
+      initialVars[4*i] = allNodesList.get(i).getInitPosX();
+      initialVars[1 + 4*i] = allNodesList.get(i).getInitPosY();
+    }
+
+    final ForkJoinPool pool = new ForkJoinPool();
+    final FrequencySweep currentSweep = new FrequencySweep(model, initialVars, pool);
+    currentSweep.setAmplitude(amplitude);
+    currentSweep.setDamping(damping);
+    currentSweep.setGravity(gravity);
+    currentSweep.setPassTime(passTime);
+    currentSweep.setStepSize(0.01 * super.timeMultiplier);
+    currentSweep.setNodeOffset(allNodesList.get(0).m_Width/2);
+    currentSweep.setSolver(getSolverName());
+    currentSweep.setSteadyStateTolerance(steadyStateTolerance);
+    currentSweep.setWarmStart(isWarmStart());
+    sweep = currentSweep;
+
+    final double[] frequencies = FrequencySweep.getFrequencies(frequencyLimit, incrementFrequency);
+    final int passes = passLimit;
+    final AdaptivePassController controller = passController;
+
+    final long seed = getSpectrumParameters().getSeed();
+
+    Thread sweepThread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          //-- Passes run concurrently, each is merged on the event thread as soon as it is finished
+          final AtomicInteger finishedPasses = new AtomicInteger();
+          //-- Statistics of the sweep thread, the results of the event thread are only for display
+          final SpectrumResults batchResults = new SpectrumResults(frequencies, passes);
+          FrequencySweep.PassListener passListener = new FrequencySweep.PassListener() {
+            public void passFinished(int pass, final double[] energies) {
+              for (int i=0; i<energies.length; i++) {
+                batchResults.addEnergy(pass, i, energies[i]);
+              }
+              final int passNumber = finishedPasses.incrementAndGet();
+              SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                  if (!currentSweep.isCancelled())
+                    mergeSweepPass(frequencies, energies, passNumber, passes);
+                }
+              });
+            }
+          };
+          int done = 0;
+          while (!currentSweep.isCancelled() && !controller.isComplete(batchResults, done)) {
+            int count = controller.getNextBatch(done, pool.getParallelism());
+            currentSweep.runPasses(frequencies, done, count, seed, passListener);
+            done += count;
+          }
+          SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+              if (!currentSweep.isCancelled() && sweep == currentSweep)
+                completeSimulation();
+            }
+          });
+        } catch (Exception e) {
+          e.printStackTrace();
+        } finally {
+          pool.shutdown();
+        }
+      }
+    }, "FrequencySweep");
+    sweepThread.setDaemon(true);
+    sweepThread.start();
+  }
+
+  /**
+   * Adds results of one pass from the sweep engine to the current series and to the results,
+   * in the same way as nextRun does for each point.
+   *
+   * @param frequencies - frequencies of the pass
+   * @param energies - average maximum energy for each frequency
+   * @param pass - number of finished pass
+   * @param passes - number of all passes
+   */
+  public void mergeSweepPass(double[] frequencies, double[] energies, int pass, int passes) {
+    objSeriesCurrent.clear();
+    for (int i=0; i<frequencies.length; i++) {
+      objSeriesCurrent.add(frequencies[i], energies[i]);
+    }
+    spectrumResults.addPass(energies);
+
+    progress.setPassText("Finished: "+ pass +"/" + passes + " pass");
   }
 
   /**
@@ -1077,61 +1328,89 @@ public class Network2DSim extends Simulation implements ActionListener
    */
   public void nextRun(double frequencyDriven, double relativePosition) {
     timeSplit = 0;
-    timeSplitStart = (long)getTime();
+    timeSplitStart = getTime();
 
-    double averageEnergy = 0.0;
-    for (int e=0; e<allEdgesList.size(); e++) {
-      Edge currentEdge = allEdgesList.get(e);
-      averageEnergy += currentEdge.getMaxEnergy();
-    }
-    averageEnergy = averageEnergy/(allEdgesList.size());
+    double averageEnergy = model.getAverageMaxEnergy();
 
 
-    objSeriesCurrent.add(frequencyDriven, averageEnergy);
-    stopMotion();
+    //-- Called by the simulation thread, the point is added to the chart by progressTimer
+    progress.addPoint(frequencyDriven, averageEnergy);
+    if (!realTime && spectrumResults != null) {
+      //-- Frequencies of a pass are multiples of the step, starting from 0
+      int index = (int)Math.round(frequencyDriven / incrementFrequency);
+      if (index < spectrumResults.getFrequencyCount())
+        spectrumResults.addEnergy(passCount - 1, index, averageEnergy);
+    }
+
+    //-- Warm start carries the state on to the next point of the same pass, only records start again
+    double previousFrequency = frequencyDriven;
+    boolean carryOn = isWarmStart() && frequencyDriven + incrementFrequency < frequencyLimit;
+    if (carryOn) {
+      model.resetMaxEnergy();
+    } else {
+      stopMotion();
+      drivePhaseOffset = 0;
+    }
 
     for (int el = 1; el<4; el++) {
-      allNodesList.get(el).maxDispY = relativePosition;
-      allNodesList.get(el).minDispY = relativePosition;
+      model.setDisplacement(el, relativePosition);
     }
 
     frequencyDriven += incrementFrequency;
     frequency = frequencyDriven;
+    if (carryOn) {
+      //-- Phase of the wave at this time stays the same at the new frequency
+      drivePhaseOffset += 2 * Math.PI * (previousFrequency - frequency) * timeSplitStart;
+    }
+    if (steadyStateDetector != null) {
+      steadyStateDetector.reset(frequency, 0);
+    }
 
     //If running as simulation for faster and multiple times
     if (!realTime) {
-      if (frequency >= frequencyLimit && passCount < passLimit) {
+      if (frequency >= frequencyLimit && passCount < passLimit
+              && !passController.isComplete(spectrumResults, passCount)) {
         frequency = 0;
         passCount++;
-        passTracker.setText("Current: "+ passCount +"/" + passLimit + " pass");
-        passTracker.repaint();
+        progress.setPassText("Current: "+ passCount +"/" + passLimit + " pass");
 
-        List<XYDataItem> allItems = new ArrayList<XYDataItem>(objSeriesCurrent.getItems());
-        allSimulationValues.add(allItems);
-        objSeriesCurrent.clear();
+        progress.startPass();
         //System.out.println("Pass: " + passCount + " / " + passLimit);
-        //System.out.println("Size of all sim values: " + allSimulationValues.size());
-      } else if (frequency >= frequencyLimit && passCount == passLimit) {
+      } else if (frequency >= frequencyLimit) {
 
         //Final part to export all values and stop the simulation
-        //Once the pass count has reached maximum
-        List<XYDataItem> allItems = new ArrayList<XYDataItem>(objSeriesCurrent.getItems());
-        allSimulationValues.add(allItems);
-        objSeriesCurrent.clear();
-        stopMotion();
-        List<XYDataItem> averageList = calculateAverageEnergy();
-        for (int a=0; a<averageList.size(); a++) {
-          objSeriesAverage.add(averageList.get(a));
-        }
-        //export to file
-        exportToFile(allSimulationValues, averageList, destFilePath);
-
-        //Stops the simulation from running
-        stopSimulation();
+        //Once the pass count has reached maximum or the confidence interval is narrow enough
+        //-- The sweep stops here, results are exported and controls reset on the event thread
+        simulationStart = false;
+        final SpectrumResults results = spectrumResults;
+        SwingUtilities.invokeLater(new Runnable() {
+          public void run() {
+            //-- Simulation stopped by the user in the meantime has nothing to export
+            if (spectrumResults == results)
+              completeSimulation();
+          }
+        });
       }
     }
   }
 
+  /**
+   * Calculates average of all passes, exports all values to file and stops the simulation.
+   * Called once the pass count has reached maximum, or the confidence interval of every frequency
+   * is narrower than the confidence width. Must be called on the event thread.
+   */
+  public void completeSimulation() {
+    progress.drainPoints(objSeriesCurrent);
+    objSeriesCurrent.clear();
+    stopMotion();
+    SpectrumExporter.addAverageEnergy(spectrumResults, objSeriesAverage);
+    //export to file
+    exportToFile(spectrumResults, destFilePath);
+
+    //Stops the simulation from running
+    stopSimulation();
+  }
+
   /**
    * This method returns the average position of all Nodes in the Network.
    * It is used to calculate Maximum displacement relative to the center of the network.
@@ -1166,6 +1445,23 @@ public class Network2DSim extends Simulation implements ActionListener
     return y;
   }
 
+  /**
+   * Returns the average position of all Nodes in direction of Y,
+   * read directly from array of variables instead of Node objects.
+   *
+   * @param x - array of variables, x, y, vx, vy for each node
+   * @return double
+   */
+  public double getCenterOfMoleculeY(double[] x) {
+    int nodeCount = x.length/4;
+    double y = 0;
+    for (int i=0; i<nodeCount; i++) {
+      y += x[1 + 4*i];
+    }
+    if (nodeCount>0) y=y/nodeCount;
+    return y;
+  }
+
   /**
    * This method calculates Electro Magnetic force that is applied to the network in Y direction.
    *
@@ -1183,115 +1479,92 @@ public class Network2DSim extends Simulation implements ActionListener
 
     // frequency = 1/period
     double k = 2 * Math.PI / 0.25;
-    double period = 1/frequency;
-    double w = 2 * Math.PI / period;
-
-    //double now = getTime(); now - gettime
-    double t = getTime();
 
-    electroMagneticForce = amplitude * Math.sin(k*x - w*t);
+    //-- w*t is worked out once per evaluate from time of the stage
+    electroMagneticForce = amplitude * Math.sin(k*x - drivePhase);
     //System.out.println("Electro force: " + electroMagneticForce + " x: " + x + " time: " + t);
 
     return  electroMagneticForce;
   }
 
   /**
-   * This method calculates average value on Y axis and returns a list
-   * that can be used to plot a graph with X and Y data values.
+   * Returns energies of all passes of the current simulation with statistics of each frequency,
+   * null when no simulation has been started.
    *
-   * @return list - of XYDataItem items
-   *
-   * Created by Andrejs Zile.
+   * @return SpectrumResults
    */
-  public List<XYDataItem> calculateAverageEnergy() {
-    List<XYDataItem> averageList = new ArrayList<>();
-    XYDataItem averageItem;
-    //for each item at the same position in different array
-    double runSize = allSimulationValues.size();
-    if (allSimulationValues.size()>0) {
-      double size = allSimulationValues.get(0).size();
-      for (int i=0; i<size; i++) {
-        double xValue = 0.0;
-        double yValue = 0.0;
-
-        for (int j=0; j<allSimulationValues.size(); j++) {
-          XYDataItem oneItem = (XYDataItem)allSimulationValues.get(j).get(i);
-          if (xValue == 0.0) xValue = oneItem.getXValue();
-          //System.out.println("yValue = " + oneItem.getYValue());
-          yValue += oneItem.getYValue();
-        }
-        yValue = yValue / (runSize); //-----------------removed +1 here
-        averageItem = new XYDataItem(xValue, yValue);
-        averageList.add(averageItem);
-        //System.out.println("Values: x: " + xValue + ", y: " + yValue);
-      }
-    }
-    return averageList;
+  public SpectrumResults getSpectrumResults() {
+    return spectrumResults;
   }
 
   /**
    * This method handles the export of all values to specified file.
    *
-   * Includes export of an average image.
+   * Includes export of an average image and of the statistics of each frequency.
    *
-   * @param allValues - all values generated from simulation
-   * @param averageValues - all average values from simulation
+   * @param results - all values generated from simulation
    * @param filePath - file path for destination
    *
    * Created by Andrejs Zile.
    */
-  public void exportToFile(List allValues, List<XYDataItem> averageValues, File filePath) {
-
-    String fileName = getCurrentTimeStamp() + "-analysis-results";
-
-    String actualFilePath = filePath.getAbsolutePath() + "/" + fileName + ".csv";
-    String imageFilePath = filePath.getAbsolutePath() + "/" + fileName + "-avg.png";
-
-    File imageFile = new File(imageFilePath);
-
+  public void exportToFile(SpectrumResults results, File filePath) {
+    double timeElapsedInSeconds = (System.currentTimeMillis() - simulationStartTime) / 1000.0;
+    SpectrumExporter exporter = new SpectrumExporter(sourceFileName, getSpectrumParameters());
     try {
-      ChartUtilities.saveChartAsPNG(imageFile,objChart,1400,800);
+      String resultPath = exporter.exportToFile(results, objChart, filePath, timeElapsedInSeconds);
+      exporter.exportStatistics(results, resultPath);
     } catch (IOException e) {
       e.printStackTrace();
+      JOptionPane.showMessageDialog(null, "Results could not be exported: " + e.getMessage());
     }
+  }
 
-    //System.out.println("Actual file path: " + actualFilePath);
-    try (PrintWriter writer = new PrintWriter(actualFilePath, "UTF-8")) {
-      for (int i=0; i<allValues.size(); i++) {
-        List<XYDataItem> currentListItem = (List<XYDataItem>)allValues.get(i);
-        if (i==0) {
-          for (int j=0; j<currentListItem.size(); j++) {
-            writer.print(currentListItem.get(j).getX());
-            if (j<(currentListItem.size()-1))
-              writer.print(",");
-          }
-          writer.println();
-        }
-        for (int j=0; j<currentListItem.size(); j++) {
-          writer.print(currentListItem.get(j).getY());
-          if (j<(currentListItem.size()-1))
-            writer.print(",");
-        }
+  /**
+   * Returns parameters of current simulation, as they were set from the control panel.
+   * @return SpectrumParameters
+   */
+  public SpectrumParameters getSpectrumParameters() {
+    SpectrumParameters parameters = new SpectrumParameters();
+    parameters.setTimeMultiplier(super.timeMultiplier);
+    parameters.setAmplitude(amplitude);
+    parameters.setPassLimit(passLimit);
+    parameters.setFrequencyLimit(frequencyLimit);
+    parameters.setDamping(damping);
+    parameters.setIncrementFrequency(incrementFrequency);
+    parameters.setPassTime(passTime);
+    parameters.setSolver(getSolverName());
+    parameters.setSteadyStateTolerance(steadyStateTolerance);
+    parameters.setWarmStart(isWarmStart());
+    parameters.setConfidenceWidth(confidenceIntervalWidth);
+    return parameters;
+  }
 
-        writer.println();
-      }
-      writer.println();
-      writer.println("-----,-----,-----,-----,-----,-----,-----,-----");
-      double timeElapsedInSeconds = (simulationStartTime - System.currentTimeMillis()) / 1000.0;
-      writer.println("Network file name: " + sourceFileName
-              + ",Time multiplier: " + super.timeMultiplier
-              + ",Force Amplitude Set: " + amplitude
-              + ",Passes: " + passLimit + ",Maximum frequency: " + frequencyLimit
-              + ",Damping: " + damping + ",Frequency step increment: " + incrementFrequency
-              + ",Step duration: " + passTime
-              + ",Time elapsed in seconds: " + timeElapsedInSeconds);
-      writer.close();
-
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-    } catch (UnsupportedEncodingException e) {
-      e.printStackTrace();
-    }
+  /**
+   * Returns true if warm start is selected in the control panel
+   * @return boolean
+   */
+  public boolean isWarmStart() {
+    return warmStart != null && warmStart.isSelected();
+  }
+
+  /**
+   * Returns name of the solver selected in the control panel, Runge-Kutta if there is no control panel.
+   * @return String
+   */
+  public String getSolverName() {
+    if (solverChoice == null)
+      return SpectrumParameters.SOLVER_RUNGE_KUTTA;
+    return (String)solverChoice.getSelectedItem();
+  }
+
+  /**
+   * Creates solver selected in the control panel.
+   * Called by Simulation before controls exist, then it is the default Runge-Kutta.
+   * @return DiffEqSolver
+   */
+  @Override
+  protected DiffEqSolver makeDiffEqSolver() {
+    return SpectrumParameters.createSolver(getSolverName(), this);
   }
 
   /**
@@ -0,0 +1,269 @@
+package myphisicslab;
+
+import java.util.Arrays;
+
+/**
+ * NetworkEquation Class
+ *
+ * Differential equation of a driven and damped spring network, which owns its own state.
+ * Many instances can share one NetworkModel, which is only read, so that independent runs
+ * (for example different driving frequencies) can be evaluated on separate threads.
+ *
+ * Forces are the same as in Network2DSim: spring forces of all edges, damping proportional
+ * to velocity and electro magnetic force applied in y direction to charged nodes.
+ * Time is the integrated time of this run, it is advanced by the step size of each step.
+ */
+public class NetworkEquation implements DampedDiffEq, TimedDiffEq {
+    private NetworkModel model;
+    private double[] vars;
+    private boolean[] calc;
+    private double[] springForce;
+    private double[] maxEnergy;
+    private double damping = 20.0;
+    private double gravity = 0.0;
+    private double amplitude = 0.0;
+    private double frequency = 0.0;
+    private double nodeOffset = 0.0;
+    private double time = 0.0;
+    private double totalEnergy = 0.0;
+    //-- Added to w*t, keeps phase of the driving wave continuous when frequency changes
+    private double phaseOffset = 0.0;
+
+    /**
+     * Creates equation for given network, state is set to zero.
+     * @param model - packed network, which is shared and not modified
+     */
+    public NetworkEquation(NetworkModel model) {
+        this.model = model;
+        int nodeCount = model.getNodeCount();
+        vars = new double[4 * nodeCount];
+        calc = new boolean[4 * nodeCount];
+        Arrays.fill(calc, true);
+        springForce = new double[2 * nodeCount];
+        maxEnergy = new double[model.getEdgeCount()];
+    }
+
+    /**
+     * Sets state to given variables, sets time to 0 and clears maximum energy of all edges.
+     * @param initialVars - x, y, vx, vy for each node
+     */
+    public void reset(double[] initialVars) {
+        System.arraycopy(initialVars, 0, vars, 0, vars.length);
+        time = 0.0;
+        phaseOffset = 0.0;
+        Arrays.fill(maxEnergy, 0.0);
+    }
+
+    /**
+     * Changes frequency of the driving force without resetting the state. Phase of the wave
+     * at current time stays the same, so the oscillation continues smoothly at the new frequency.
+     * @param frequency - new frequency
+     */
+    public void changeFrequency(double frequency) {
+        phaseOffset += 2 * Math.PI * (this.frequency - frequency) * time;
+        this.frequency = frequency;
+    }
+
+    /**
+     * Clears maximum energy of all edges, state and time are kept.
+     */
+    public void resetMaxEnergy() {
+        Arrays.fill(maxEnergy, 0.0);
+    }
+
+    /**
+     * Returns copy of the state, to continue from it later with restoreState.
+     * @return x, y, vx, vy for each node, followed by time and phase offset of the driving wave
+     */
+    public double[] saveState() {
+        double[] state = Arrays.copyOf(vars, vars.length + 2);
+        state[vars.length] = time;
+        state[vars.length + 1] = phaseOffset;
+        return state;
+    }
+
+    /**
+     * Sets state, time and phase offset saved by saveState, maximum energy of edges is cleared.
+     * @param state - state returned by saveState of an equation of the same network
+     */
+    public void restoreState(double[] state) {
+        if (state.length != vars.length + 2) {
+            throw new IllegalArgumentException("State has " + state.length + " values instead of " + (vars.length + 2));
+        }
+        System.arraycopy(state, 0, vars, 0, vars.length);
+        time = state[vars.length];
+        phaseOffset = state[vars.length + 1];
+        Arrays.fill(maxEnergy, 0.0);
+    }
+
+    /**
+     * Sets damping force coefficient
+     * @param damping
+     */
+    public void setDamping(double damping) {
+        this.damping = damping;
+    }
+
+    /**
+     * Sets gravity
+     * @param gravity
+     */
+    public void setGravity(double gravity) {
+        this.gravity = gravity;
+    }
+
+    /**
+     * Sets amplitude of the driving force
+     * @param amplitude
+     */
+    public void setAmplitude(double amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    /**
+     * Sets frequency of the driving force
+     * @param frequency
+     */
+    public void setFrequency(double frequency) {
+        this.frequency = frequency;
+    }
+
+    /**
+     * Sets phase of the driving wave at time 0, reset sets it back to 0
+     * @param phaseOffset - phase in radians
+     */
+    public void setPhaseOffset(double phaseOffset) {
+        this.phaseOffset = phaseOffset;
+    }
+
+    /**
+     * Sets offset between variables and drawn position of a node,
+     * drawn position is used as position in the electro magnetic wave.
+     * @param nodeOffset - half of the node width
+     */
+    public void setNodeOffset(double nodeOffset) {
+        this.nodeOffset = nodeOffset;
+    }
+
+    /**
+     * Returns integrated time of this run
+     * @return double
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the array of state variables, x, y, vx, vy for each node
+     * @return array of double
+     */
+    public double[] getVars() {
+        return vars;
+    }
+
+    /**
+     * Returns which variables are calculated by the solver, all of them are.
+     * @return array of boolean
+     */
+    public boolean[] getCalc() {
+        return calc;
+    }
+
+    /**
+     * Returns damping rate of velocity variable i, damping divided by mass of its node.
+     * @param i - index of the variable
+     * @return double
+     */
+    public double getDampingRate(int i) {
+        return damping / model.getMass(i / 4);
+    }
+
+    /**
+     * Evaluates velocities and accelerations of all nodes at time of the beginning of the step.
+     * @param x - input variables
+     * @param change - output rates of change
+     */
+    public void evaluate(double[] x, double[] change) {
+        evaluate(x, change, time);
+    }
+
+    /**
+     * Evaluates velocities and accelerations of all nodes.
+     * Drive force uses positions of the nodes at the beginning of the step, as Network2DSim does,
+     * and phase of the wave at the time of the stage.
+     * @param x - input variables
+     * @param change - output rates of change
+     * @param stageTime - time of the stage, passed by the solver
+     */
+    public void evaluate(double[] x, double[] change, double stageTime) {
+        model.accumulateSpringForces(x, springForce);
+        AdjacencyIndex adjacency = model.getAdjacency();
+        // y = A sin (kx - wt), see Network2DSim.getElectroForce
+        double k = 2 * Math.PI / 0.25;
+        double wt = 2 * Math.PI * frequency * stageTime + phaseOffset;
+
+        for (int obj=0; obj<model.getNodeCount(); obj++) {
+            int i = 4 * obj;
+            double mass = model.getMass(obj);
+            change[i] = x[i + 2];
+            change[i + 1] = x[i + 3];
+            double rx = springForce[2 * obj] / mass;
+            double ry = springForce[1 + 2 * obj] / mass - gravity * adjacency.getDegree(obj);
+            if (damping != 0) {
+                rx -= (damping / mass) * x[i + 2];
+                ry -= (damping / mass) * x[i + 3];
+            }
+            if (amplitude > 0) {
+                ry += model.getCharge(obj) * amplitude * Math.sin(k * (vars[i] - nodeOffset) - wt);
+            }
+            change[i + 2] = rx;
+            change[i + 3] = ry;
+        }
+    }
+
+    /**
+     * Advances the state by one step of the solver and records maximum energy of every edge.
+     * @param solver - solver created for this equation
+     * @param stepSize - time increment
+     */
+    public void step(DiffEqSolver solver, double stepSize) {
+        solver.step(stepSize);
+        time += stepSize;
+        recordEdgeEnergies();
+    }
+
+    /**
+     * Updates maximum energy of every edge with its energy in current state.
+     */
+    public void recordEdgeEnergies() {
+        totalEnergy = 0.0;
+        for (int e=0; e<maxEnergy.length; e++) {
+            double energy = model.getEdgeEnergy(vars, e);
+            if (maxEnergy[e] < energy) {
+                maxEnergy[e] = energy;
+            }
+            totalEnergy += energy;
+        }
+    }
+
+    /**
+     * Returns summed energy of all edges in the state of the last recording.
+     * @return double
+     */
+    public double getTotalEnergy() {
+        return totalEnergy;
+    }
+
+    /**
+     * Returns maximum energy of all edges averaged over edges, the value that is plotted
+     * for each frequency of the spectrum.
+     * @return double
+     */
+    public double getAverageMaxEnergy() {
+        double averageEnergy = 0.0;
+        for (int e=0; e<maxEnergy.length; e++) {
+            averageEnergy += maxEnergy[e];
+        }
+        return averageEnergy / maxEnergy.length;
+    }
+}
@@ -0,0 +1,252 @@
+package myphisicslab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * NetworkModel Class
+ *
+ * Packed representation of a Network that the solver runs against.
+ * Properties of Nodes (mass, charge sign) and Edges (spring constant, rest length, endpoints)
+ * are copied once into primitive arrays, indexed by node and edge index, so that evaluation
+ * of forces reads memory sequentially instead of going through Node and Edge objects.
+ *
+ * State of the simulation stays in the vars array of the solver, laid out as
+ * x, y, vx, vy for each node. Records of maximum energy and displacement are kept here
+ * and copied back onto Node and Edge objects only when they are drawn.
+ */
+public class NetworkModel {
+    private int nodeCount;
+    private int edgeCount;
+    private double[] mass;
+    private double[] charge;
+    private double[] springConst;
+    private double[] restLength;
+    private AdjacencyIndex adjacency;
+
+    private double[] maxEnergy;
+    private double[] minDispY;
+    private double[] maxDispY;
+
+    /**
+     * Copies all values needed for simulation from node and edge lists.
+     * @param nodeList - list of Nodes, position in the list is used as node index
+     * @param edgeList - list of Edges, position in the list is used as edge index
+     */
+    public NetworkModel(ArrayList<Node> nodeList, ArrayList<Edge> edgeList) {
+        nodeCount = nodeList.size();
+        edgeCount = edgeList.size();
+
+        mass = new double[nodeCount];
+        charge = new double[nodeCount];
+        minDispY = new double[nodeCount];
+        maxDispY = new double[nodeCount];
+        for (int n=0; n<nodeCount; n++) {
+            Node node = nodeList.get(n);
+            mass[n] = node.m_Mass;
+            charge[n] = node.getChargeIfPositive() ? 1.0 : -1.0;
+            minDispY[n] = node.minDispY;
+            maxDispY[n] = node.maxDispY;
+        }
+
+        springConst = new double[edgeCount];
+        restLength = new double[edgeCount];
+        maxEnergy = new double[edgeCount];
+        for (int e=0; e<edgeCount; e++) {
+            Edge edge = edgeList.get(e);
+            springConst[e] = edge.m_SpringConst;
+            restLength[e] = edge.m_RestLength;
+            maxEnergy[e] = edge.getMaxEnergy();
+        }
+
+        adjacency = new AdjacencyIndex(nodeCount, edgeList);
+    }
+
+    /**
+     * Returns number of Nodes
+     * @return int
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns number of Edges
+     * @return int
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns mass of a Node
+     * @param node - node index
+     * @return double
+     */
+    public double getMass(int node) {
+        return mass[node];
+    }
+
+    /**
+     * Returns charge sign of a Node, 1 for positive and -1 for negative charge.
+     * @param node - node index
+     * @return double
+     */
+    public double getCharge(int node) {
+        return charge[node];
+    }
+
+    /**
+     * Returns spring constant of an Edge
+     * @param edge - edge index
+     * @return double
+     */
+    public double getSpringConst(int edge) {
+        return springConst[edge];
+    }
+
+    /**
+     * Returns rest length of an Edge
+     * @param edge - edge index
+     * @return double
+     */
+    public double getRestLength(int edge) {
+        return restLength[edge];
+    }
+
+    /**
+     * Returns adjacency index of the Network
+     * @return AdjacencyIndex
+     */
+    public AdjacencyIndex getAdjacency() {
+        return adjacency;
+    }
+
+    /**
+     * Accumulates forces of all springs into force array, which holds x and y force of each node.
+     * Each edge is visited exactly once and its force is added to both nodes,
+     * with opposite sign on the to node. Forces are not divided by mass.
+     *
+     * @param x - array of variables, x, y, vx, vy for each node
+     * @param force - output array of length 2 * number of nodes
+     */
+    public void accumulateSpringForces(double[] x, double[] force) {
+        Arrays.fill(force, 0.0);
+        for (int k=0; k<edgeCount; k++) {
+            int obj = adjacency.getEdgeFrom(k);
+            int obj2 = adjacency.getEdgeTo(k);
+            // x and y distance between objects
+            double xx = x[4 * obj2] - x[4 * obj];
+            double yy = x[1 + 4 * obj2] - x[1 + 4 * obj];
+            // total distance betw objects
+            double len = Math.sqrt(xx * xx + yy * yy);
+            // Fx = sc*(len - R)*xx/len, pulls the from node towards the to node
+            double f = springConst[k] * (len - restLength[k]) / len;
+            force[2 * obj] += f * xx;
+            force[1 + 2 * obj] += f * yy;
+            force[2 * obj2] -= f * xx;
+            force[1 + 2 * obj2] -= f * yy;
+        }
+    }
+
+    /**
+     * Calculates potential energy of an Edge for given positions.
+     * @param x - array of variables, x, y, vx, vy for each node
+     * @param edge - edge index
+     * @return energy, 1/2kx^2
+     */
+    public double getEdgeEnergy(double[] x, int edge) {
+        int obj = adjacency.getEdgeFrom(edge);
+        int obj2 = adjacency.getEdgeTo(edge);
+        double xx = x[4 * obj2] - x[4 * obj];
+        double yy = x[1 + 4 * obj2] - x[1 + 4 * obj];
+        double stretch = Math.sqrt(xx * xx + yy * yy) - restLength[edge];
+        return 0.5 * springConst[edge] * stretch * stretch;
+    }
+
+    /**
+     * Updates maximum energy of every Edge with its energy at given positions.
+     * @param x - array of variables, x, y, vx, vy for each node
+     * @return summed energy of all Edges at given positions
+     */
+    public double recordEdgeEnergies(double[] x) {
+        double totalEnergy = 0.0;
+        for (int e=0; e<edgeCount; e++) {
+            double energy = getEdgeEnergy(x, e);
+            if (maxEnergy[e] < energy) {
+                maxEnergy[e] = energy;
+            }
+            totalEnergy += energy;
+        }
+        return totalEnergy;
+    }
+
+    /**
+     * Updates minimum and maximum displacement of a Node relative to the center of the network.
+     * @param node - node index
+     * @param relativePosition - distance from the center of the network in y direction
+     */
+    public void recordDisplacement(int node, double relativePosition) {
+        if (minDispY[node] > relativePosition) {
+            minDispY[node] = relativePosition;
+        }
+        if (maxDispY[node] < relativePosition) {
+            maxDispY[node] = relativePosition;
+        }
+    }
+
+    /**
+     * Sets minimum and maximum displacement of a Node.
+     * @param node - node index
+     * @param relativePosition - distance from the center of the network in y direction
+     */
+    public void setDisplacement(int node, double relativePosition) {
+        minDispY[node] = relativePosition;
+        maxDispY[node] = relativePosition;
+    }
+
+    /**
+     * Sets maximum energy of every Edge to 0.
+     */
+    public void resetMaxEnergy() {
+        Arrays.fill(maxEnergy, 0.0);
+    }
+
+    /**
+     * Returns current maximum energy of an Edge
+     * @param edge - edge index
+     * @return double
+     */
+    public double getMaxEnergy(int edge) {
+        return maxEnergy[edge];
+    }
+
+    /**
+     * Returns maximum energy averaged over all Edges.
+     * @return double
+     */
+    public double getAverageMaxEnergy() {
+        double averageEnergy = 0.0;
+        for (int e=0; e<edgeCount; e++) {
+            averageEnergy += maxEnergy[e];
+        }
+        return averageEnergy / edgeCount;
+    }
+
+    /**
+     * Copies records of maximum energy and displacement back onto Node and Edge objects.
+     * This is done only when the network is drawn.
+     * @param nodeList - list of Nodes this model was built from
+     * @param edgeList - list of Edges this model was built from
+     */
+    public void syncRecords(ArrayList<Node> nodeList, ArrayList<Edge> edgeList) {
+        for (int n=0; n<nodeCount; n++) {
+            Node node = nodeList.get(n);
+            node.minDispY = minDispY[n];
+            node.maxDispY = maxDispY[n];
+        }
+        for (int e=0; e<edgeCount; e++) {
+            edgeList.get(e).setMaxEnergy(maxEnergy[e]);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package myphisicslab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * NetworkSnapshot Class
+ *
+ * Compact binary copy of a loaded Network, so that a network that has been opened before
+ * is read back without parsing the Pajek text again.
+ *
+ * The snapshot holds nodes with labels, charge and initial positions, and edges with weight,
+ * spring constant, rest length and the indexes of their two nodes. Node mass is not stored,
+ * as it is rebuilt by connecting the edges in the same order as the loader did.
+ * A flag records if initial positions are relaxed equilibrium positions.
+ *
+ * Layout, all values big endian:
+ * int magic, int version, int flags, int node count, int edge count,
+ * for each node: int id, byte charge (1 positive), double initPosX, double initPosY,
+ *                int label length in bytes (-1 for no label), UTF-8 label bytes,
+ * for each edge: int node from index, int node to index, double weight,
+ *                double spring constant, double rest length.
+ */
+public class NetworkSnapshot {
+    //-- "CNAS", Complex Network Analysis Snapshot
+    private static final int MAGIC = 0x434E4153;
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".snapshot";
+
+    private static final int FLAG_RELAXED = 1;
+    private static final int HEADER_SIZE = 5 * 4;
+    private static final int NODE_SIZE = 4 + 1 + 8 + 8 + 4;
+    private static final int EDGE_SIZE = 4 + 4 + 8 + 8 + 8;
+
+    private NetworkSnapshot() {
+    }
+
+    /**
+     * Returns the snapshot file that belongs to a Pajek file, which is kept next to it.
+     * @param sourceFile - Pajek format data file
+     * @return File
+     */
+    public static File getSnapshotFile(File sourceFile) {
+        return new File(sourceFile.getPath() + EXTENSION);
+    }
+
+    /**
+     * Returns true if the snapshot of the source file exists and is not older than the source file.
+     * @param sourceFile - Pajek format data file
+     * @return boolean
+     */
+    public static boolean isCurrent(File sourceFile) {
+        File snapshotFile = getSnapshotFile(sourceFile);
+        return snapshotFile.isFile() && snapshotFile.lastModified() >= sourceFile.lastModified();
+    }
+
+    /**
+     * Writes the network into a snapshot file. The file is written under a unique temporary name
+     * in the same folder and then atomically renamed, so a reader never sees a partly written
+     * snapshot, and the last of several writers of the same file wins.
+     * @param network - network to save, initial positions of nodes are saved as well
+     * @param file - snapshot file
+     * @throws IOException
+     */
+    public static void write(Network network, File file) throws IOException {
+        ArrayList<Node> nodeList = network.getNodeList();
+        ArrayList<Edge> edgeList = network.getEdgeList();
+
+        byte[][] labels = new byte[nodeList.size()][];
+        long size = HEADER_SIZE + (long)NODE_SIZE * nodeList.size() + (long)EDGE_SIZE * edgeList.size();
+        IdentityHashMap<Node, Integer> nodeIndex = new IdentityHashMap<Node, Integer>(nodeList.size());
+        for (int n=0; n<nodeList.size(); n++) {
+            String label = nodeList.get(n).getLabel();
+            if (label != null) {
+                labels[n] = label.getBytes(StandardCharsets.UTF_8);
+                size += labels[n].length;
+            }
+            nodeIndex.put(nodeList.get(n), n);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Network is too large for a snapshot: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(network.isRelaxed() ? FLAG_RELAXED : 0);
+        buffer.putInt(nodeList.size());
+        buffer.putInt(edgeList.size());
+        for (int n=0; n<nodeList.size(); n++) {
+            Node node = nodeList.get(n);
+            buffer.putInt(node.getId());
+            buffer.put((byte)(node.getChargeIfPositive() ? 1 : 0));
+            buffer.putDouble(node.getInitPosX());
+            buffer.putDouble(node.getInitPosY());
+            if (labels[n] == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(labels[n].length);
+                buffer.put(labels[n]);
+            }
+        }
+        for (Edge edge : edgeList) {
+            buffer.putInt(nodeIndex.get(edge.getNodeFrom()));
+            buffer.putInt(nodeIndex.get(edge.getNodeTo()));
+            buffer.putDouble(edge.getWeight());
+            buffer.putDouble(edge.m_SpringConst);
+            buffer.putDouble(edge.m_RestLength);
+        }
+        buffer.flip();
+
+        //-- Each writer has its own temporary file, so writers of the same snapshot,
+        //-- in this or another process, never write into the same file
+        Path temporaryFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+                file.getName(), ".tmp");
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporaryFile, file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temporaryFile);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot file with a single bulk read into a buffer and rebuilds the network.
+     * @param file - snapshot file
+     * @return Network class object
+     * @throws IOException if the file can not be read, is not a snapshot or has another version
+     */
+    public static Network read(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a network snapshot: " + file);
+            }
+            buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Snapshot is truncated: " + file);
+                }
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a network snapshot: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + file);
+        }
+        int flags = buffer.getInt();
+        int nodeCount = buffer.getInt();
+        int edgeCount = buffer.getInt();
+
+        try {
+            ArrayList<Node> nodeList = new ArrayList<Node>(nodeCount);
+            for (int n=0; n<nodeCount; n++) {
+                int id = buffer.getInt();
+                boolean chargePositive = buffer.get() == 1;
+                double initPosX = buffer.getDouble();
+                double initPosY = buffer.getDouble();
+                int labelLength = buffer.getInt();
+                String label = null;
+                if (labelLength >= 0) {
+                    label = new String(buffer.array(), buffer.position(), labelLength, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + labelLength);
+                }
+
+                Node node = new Node(id, label);
+                node.setX1(0);
+                node.setY1(0);
+                if (chargePositive) {
+                    node.setChargePositive();
+                } else {
+                    node.setChargeNegative();
+                }
+                node.m_Mass = node.weight;
+                node.setInitPosX(initPosX);
+                node.setInitPosY(initPosY);
+                nodeList.add(node);
+            }
+
+            ArrayList<Edge> edgeList = new ArrayList<Edge>(edgeCount);
+            for (int e=0; e<edgeCount; e++) {
+                Node from = nodeList.get(buffer.getInt());
+                Node to = nodeList.get(buffer.getInt());
+                double weight = buffer.getDouble();
+                Edge edge = new Edge(e, weight);
+                edge.setNodeFrom(from);
+                edge.setNodeTo(to);
+                edge.m_SpringConst = buffer.getDouble();
+                edge.m_RestLength = buffer.getDouble();
+                edge.setWeight(weight);
+                edgeList.add(edge);
+            }
+
+            Network network = new Network();
+            network.setNodeList(nodeList);
+            network.setEdgeList(edgeList);
+            network.setRelaxed((flags & FLAG_RELAXED) != 0);
+            return network;
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot is corrupted: " + file, e);
+        }
+    }
+}
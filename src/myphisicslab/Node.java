@@ -1,6 +1,7 @@
 package myphisicslab;
 
 import java.awt.*;
+import java.util.Arrays;
 /**
  * Node Class
  *
@@ -11,6 +12,9 @@ import java.awt.*;
  * This class is created by Andrejs Zile.
  */
 public class Node extends CMass {
+    //-- Shared empty array, array of edge ids is allocated when the first edge is added
+    private static final int[] NO_EDGES = new int[0];
+
     private int id;
     private String label;
     public double weight;
@@ -27,7 +31,7 @@ public class Node extends CMass {
         this.weight = 1;
         super.m_Mass = weight;
         this.edgeCount = 0;
-        edgeIds = new int[500];
+        edgeIds = NO_EDGES;
     }
 
     public Node(int id, String label) {
@@ -37,14 +41,14 @@ public class Node extends CMass {
         super.m_Mass = weight;
         this.label = label;
         this.edgeCount = 0;
-        edgeIds = new int[500];
+        edgeIds = NO_EDGES;
     }
 
     public Node (double X1, double Y1, double width, double height, int drawMode) {
         this.id = 0;
         this.weight = 1;
         super.m_Mass = weight;
-        edgeIds = new int[500];
+        edgeIds = NO_EDGES;
     }
 
     public Node (double X1, double Y1, double width, double height, int drawMode, int nodeId) {
@@ -52,7 +56,7 @@ public class Node extends CMass {
         this.id = nodeId;
         this.weight = 1;
         super.m_Mass = weight;
-        edgeIds = new int[500];
+        edgeIds = NO_EDGES;
     }
 
     /**
@@ -119,18 +123,30 @@ public class Node extends CMass {
 
 
     /**
-     * Returns an array of all edge ids
+     * Returns an array of all edge ids, its length is the number of edges of the node
      * @return array of int
      */
     public int[] getEdgeIds() {
-        return this.edgeIds;
+        return Arrays.copyOf(this.edgeIds, edgeCount);
+    }
+
+    /**
+     * Returns number of edges connected to the node
+     * @return int
+     */
+    public int getEdgeCount() {
+        return this.edgeCount;
     }
 
     /**
-     * Add edge id to the array
+     * Add edge id to the array.
+     * Array grows by doubling, so memory is proportional to the number of edges.
      * @param id
      */
     public void addEdgeId(int id) {
+        if (edgeCount == edgeIds.length) {
+            edgeIds = Arrays.copyOf(edgeIds, Math.max(4, 2 * edgeIds.length));
+        }
         edgeIds[edgeCount] = id;
         edgeCount++;
         if (edgeCount>0) weight = weight * edgeCount;
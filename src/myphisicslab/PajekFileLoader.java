@@ -2,12 +2,19 @@ package myphisicslab;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 /**
  * PajekFileLoader class provides functionality to parse simple Pajek format data file
  * and return Network class object.
@@ -15,6 +22,17 @@ import java.util.regex.Pattern;
  * Created by Andrejs Zile
  */
 public class PajekFileLoader {
+    private static final int SECTION_NONE = 0;
+    private static final int SECTION_VERTICES = 1;
+    private static final int SECTION_EDGES = 2;
+
+    //-- Files of at least this size are loaded through memory mapped parallel loader
+    public static final long MAPPED_THRESHOLD = 64L * 1024 * 1024;
+    //-- Maximum size of one chunk of the edges section, each chunk is mapped separately
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    //-- Bytes read at a time while looking for the end of the last line of a chunk
+    private static final int LINE_END_BLOCK = 1 << 16;
+
     private Network network;
 
     public PajekFileLoader() {
@@ -63,151 +81,397 @@ public class PajekFileLoader {
      *
      */
     public Network parseFile(File file) {
+        Network assembledNetwork = loadNetwork(file);
+        if (assembledNetwork != null && !isValid(assembledNetwork)) {
+            JOptionPane.showMessageDialog(null, "The import file is invalid. Please load another file.");
+        }
+        return assembledNetwork;
+    }
+
+    /**
+     * Returns true if the network has at least one node and one edge.
+     * @param network - parsed network
+     * @return boolean
+     */
+    public static boolean isValid(Network network) {
+        return network.getNodeList().size() > 0 && network.getEdgeList().size() > 0;
+    }
+
+    /**
+     * Loads the network from its binary snapshot if the snapshot is up to date,
+     * otherwise parses the Pajek file and saves a snapshot next to it for the next time.
+     * The network is never relaxed: relaxed positions depend on the settings of the relaxation,
+     * so they are kept only by RelaxedLayoutCache, under a key that includes those settings.
+     * @param file - Pajek format data file
+     * @return Network class object, or null if the file can not be read
+     */
+    public Network loadNetwork(File file) {
+        File snapshotFile = NetworkSnapshot.getSnapshotFile(file);
+        if (NetworkSnapshot.isCurrent(file)) {
+            try {
+                Network network = NetworkSnapshot.read(snapshotFile);
+                //-- Snapshots of older versions also kept relaxed positions, which are not trusted
+                network.setRelaxed(false);
+                return network;
+            } catch (IOException e) {
+                //-- Snapshot of an older version or damaged, the Pajek file is parsed again
+                System.err.println(e.getMessage());
+            }
+        }
+        Network assembledNetwork = parseNetwork(file);
+        if (assembledNetwork != null && isValid(assembledNetwork)) {
+            saveSnapshot(assembledNetwork, snapshotFile);
+        }
+        return assembledNetwork;
+    }
+
+    /**
+     * Saves snapshot of the network, failure to save is reported but does not stop loading.
+     * @param network - loaded network
+     * @param snapshotFile - destination of the snapshot
+     */
+    public static void saveSnapshot(Network network, File snapshotFile) {
         try {
-            //System.out.println("Scanner: ");
-            Scanner sc = new Scanner(file);
-            int numberOfNodes = 0;
-            int numberOfEdges = 0;
-            int i=0;
-            int e=0;
-            boolean edgeStart = false;
-            boolean validEdges = false;
-            boolean validNodes = false;
-            boolean test = false; //to debug the file parser
-
-
-            ArrayList<Node> arrayOfNodes = new ArrayList<Node>();
-            ArrayList<Edge> arrayOfEdges = new ArrayList<Edge>();
-
-            while (sc.hasNextLine()) {
-                String str = sc.nextLine();
-
-                if (str.contains("*Vertices")) {
-                    numberOfNodes = Integer.parseInt(str.substring(10));
-                }
+            NetworkSnapshot.write(network, snapshotFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-                //If contains vertice data
-                if (str.matches("\\s*?\\d+\\s\".*\".*")) {
-                    if (test) System.out.println("Match: " + str);
-                    int nodeId = 0;
-                    String nodeLabel = null;
-
-                    //match pattern
-                    Pattern pattern = Pattern.compile("\\d+");
-                    Matcher matcher = pattern.matcher(str);
-                    if (matcher.find())
-                    {
-                        if (test) System.out.println("Matcher found id.");
-                        if (test) System.out.println(matcher.group(0));
-                        nodeId = (Integer.parseInt(matcher.group(0)));
-                        if (test) System.out.println(nodeId);
-                    }
-                    pattern = Pattern.compile("\".*\"");
-                    matcher = pattern.matcher(str);
-                    if (matcher.find())
-                    {
-                        nodeLabel = (matcher.group(0));
+    /**
+     * Parses the Pajek file without showing any dialogs, so it can be used without a display.
+     * Large files are loaded with parseNetworkMapped.
+     * @param file - Pajek format data file
+     * @return Network class object, or null if the file can not be read
+     */
+    public Network parseNetwork(File file) {
+        try {
+            if (file.length() >= MAPPED_THRESHOLD) {
+                return parseNetworkMapped(file, ForkJoinPool.commonPool());
+            }
+            try (InputStream input = new FileInputStream(file)) {
+                return parseNetwork(input);
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Parses Pajek format data in a single pass over the stream.
+     *
+     * Lines after *Vertices contain node id and label in quotes,
+     * lines after *Edges contain ids of the two nodes and weight of the edge.
+     * Nodes are looked up by id in an array indexed by id, so each edge is resolved in constant time.
+     * Edges that refer to nodes that are not listed, or connect a node to itself, are skipped.
+     *
+     * @param input - stream of Pajek format data, not closed
+     * @return Network class object
+     * @throws IOException
+     */
+    public Network parseNetwork(InputStream input) throws IOException {
+        ParseState state = new ParseState();
+        parseSections(new PajekTokenizer(input), state, false);
+        return state.assemble();
+    }
+
+    /**
+     * Parses a large Pajek file through memory mapping.
+     *
+     * Everything before the *Edges section is parsed in a single pass. The edges section is split
+     * into chunks at line boundaries, each chunk is mapped with FileChannel.map and parsed by
+     * a worker of the pool into primitive arrays. Chunks are then merged in order into Edges.
+     * Anything after the edges section is parsed in a single pass again.
+     *
+     * @param file - Pajek format data file
+     * @param pool - pool that parses chunks
+     * @return Network class object
+     * @throws IOException
+     */
+    public Network parseNetworkMapped(File file, ForkJoinPool pool) throws IOException {
+        ParseState state = new ParseState();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            //-- Header and vertices, stops after the line of *Edges
+            PajekTokenizer tokenizer = new PajekTokenizer(Channels.newInputStream(channel));
+            if (!parseSections(tokenizer, state, true)) {
+                return state.assemble();
+            }
+            long edgesStart = tokenizer.getOffset();
+
+            int chunkCount = (int)Math.max(pool.getParallelism() * 4L,
+                    (fileSize - edgesStart) / MAX_CHUNK_SIZE + 1);
+            long chunkSize = Math.max(1, (fileSize - edgesStart + chunkCount - 1) / chunkCount);
+            List<Callable<EdgeChunk>> tasks = new ArrayList<Callable<EdgeChunk>>();
+            for (long start=edgesStart; start<fileSize; start+=chunkSize) {
+                tasks.add(new ChunkParser(channel, edgesStart, start, Math.min(start + chunkSize, fileSize), fileSize));
+            }
+
+            long sectionEnd = -1;
+            try {
+                for (Future<EdgeChunk> future : pool.invokeAll(tasks)) {
+                    EdgeChunk chunk = future.get();
+                    for (int e=0; e<chunk.count; e++) {
+                        state.addEdge(chunk.from[e], chunk.to[e], chunk.weight[e]);
                     }
-                    Node newNode = new Node(nodeId-1, nodeLabel);
-                    newNode.setX1(0);
-                    newNode.setY1(0);
-                    if (nodeId % 2 == 0) {
-                        newNode.setChargeNegative();
-                    } else {
-                        newNode.setChargePositive();
+                    if (chunk.sectionEnd >= 0) {
+                        sectionEnd = chunk.sectionEnd;
+                        break;
                     }
-                    newNode.m_Mass = newNode.weight;
-                    arrayOfNodes.add(i, newNode);
-                    if (test) System.out.println(arrayOfNodes.get(i).toString());
-                    i++;
                 }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
 
-                //If contains edge data
-                if (str.contains("*edges") || str.contains("*Edges")) {
-                    if (test) System.out.println("Edges loading");
-                    edgeStart = true;
-                }
+            //-- Another section follows the edges
+            if (sectionEnd >= 0) {
+                channel.position(sectionEnd);
+                parseSections(new PajekTokenizer(Channels.newInputStream(channel)), state, false);
+            }
+        }
+        return state.assemble();
+    }
 
-                boolean weightedDouble = str.matches("\\s*\\d+\\s*\\d+\\s*\\d+\\.\\d+");
-                boolean weightedInt = str.matches("\\s*\\d+\\s*\\d+\\s*\\d+");
-
-                if ((weightedDouble || weightedInt) && edgeStart) {
-                    if (test) System.out.println("Match: " + str);
-                    int nodeFrom = 0;
-                    int nodeTo = 0;
-                    double weight = 0.0;
-
-                    //match pattern
-                    Pattern pattern = Pattern.compile("\\d+");
-                    Matcher matcher = pattern.matcher(str);
-                    if (matcher.find())
-                        nodeFrom = (Integer.parseInt(matcher.group(0)));
-                    if (matcher.find())
-                        nodeTo = (Integer.parseInt(matcher.group(0)));
-                    if (weightedInt && matcher.find())
-                        weight = Double.parseDouble(matcher.group(0));
-
-                    pattern = Pattern.compile("\\d+\\.\\d+");
-                    matcher = pattern.matcher(str);
-                    if (weightedDouble && matcher.find())
-                    {
-                        weight = Double.parseDouble(matcher.group(0));
+    /**
+     * Parses lines of the tokenizer into nodes and edges.
+     * @param tokenizer - source of Pajek format data
+     * @param state - nodes and edges parsed so far
+     * @param stopAtEdges - if true, stops after the line of *Edges header
+     * @return true if stopped at *Edges header, false at the end of input
+     * @throws IOException
+     */
+    private boolean parseSections(PajekTokenizer tokenizer, ParseState state, boolean stopAtEdges) throws IOException {
+        int section = SECTION_NONE;
+        int c;
+        while ((c = tokenizer.skipSpaces()) != -1) {
+            if (c == '*') {
+                //-- Section header, *Vertices is followed by number of nodes
+                tokenizer.read();
+                tokenizer.readWord();
+                if (tokenizer.isWord("vertices")) {
+                    section = SECTION_VERTICES;
+                    if (tokenizer.nextNumber()) {
+                        state.ensureNodeCapacity((int)tokenizer.getNumber());
+                    }
+                } else if (tokenizer.isWord("edges")) {
+                    section = SECTION_EDGES;
+                    if (stopAtEdges) {
+                        tokenizer.skipLine();
+                        return true;
+                    }
+                } else {
+                    section = SECTION_NONE;
+                }
+            } else if (section == SECTION_VERTICES && tokenizer.nextNumber()) {
+                int nodeId = (int)tokenizer.getNumber();
+                state.addNode(nodeId, tokenizer.readQuoted());
+            } else if (section == SECTION_EDGES && tokenizer.nextNumber()) {
+                int nodeFrom = (int)tokenizer.getNumber();
+                if (tokenizer.nextNumber()) {
+                    int nodeTo = (int)tokenizer.getNumber();
+                    if (tokenizer.nextNumber()) {
+                        state.addEdge(nodeFrom, nodeTo, tokenizer.getNumber());
                     }
+                }
+            }
+            tokenizer.skipLine();
+        }
+        return false;
+    }
 
-                    Edge newEdge = new Edge(e, weight);
-                    for (int n=0; n<arrayOfNodes.size(); n++) {
-                        Node currentNode = arrayOfNodes.get(n);
-                        //System.out.println("Current Node: " + currentNode.getId());
-                        //System.out.println("Node From: " + nodeFrom);
-                        //System.out.println("Node To: " + nodeTo);
-                        if (currentNode.getId() == nodeFrom-1) {
-                            //System.out.println("Node From Match");
-                            newEdge.setNodeFrom(currentNode);
-                        } else if (currentNode.getId() == nodeTo-1) {
-                            //System.out.println("Node To Match");
-                            newEdge.setNodeTo(currentNode);
-                        }
+    /**
+     * Nodes and edges parsed so far, with nodes indexed by id.
+     */
+    private static class ParseState {
+        ArrayList<Node> arrayOfNodes = new ArrayList<Node>();
+        ArrayList<Edge> arrayOfEdges = new ArrayList<Edge>();
+        Node[] nodesById = new Node[16];
 
-                        newEdge.m_SpringConst=weight *100;
-                        newEdge.m_RestLength = 2;
-                        newEdge.setWeight(weight);
-                    }
-                    arrayOfEdges.add(e, newEdge);
-                    if (test) System.out.println(arrayOfEdges.get(e));
-                    e++;
+        void ensureNodeCapacity(int numberOfNodes) {
+            if (numberOfNodes > nodesById.length) {
+                arrayOfNodes.ensureCapacity(numberOfNodes);
+                nodesById = growNodes(nodesById, numberOfNodes);
+            }
+        }
+
+        void addNode(int nodeId, String nodeLabel) {
+            Node newNode = new Node(nodeId-1, nodeLabel);
+            newNode.setX1(0);
+            newNode.setY1(0);
+            if (nodeId % 2 == 0) {
+                newNode.setChargeNegative();
+            } else {
+                newNode.setChargePositive();
+            }
+            newNode.m_Mass = newNode.weight;
+            arrayOfNodes.add(newNode);
+            if (nodeId >= 1) {
+                if (nodeId > nodesById.length) {
+                    nodesById = growNodes(nodesById, Math.max(nodeId, 2 * nodesById.length));
+                }
+                if (nodesById[nodeId-1] == null) {
+                    nodesById[nodeId-1] = newNode;
                 }
+            }
+        }
 
+        void addEdge(int nodeFrom, int nodeTo, double weight) {
+            Node from = findNode(nodesById, nodeFrom);
+            Node to = findNode(nodesById, nodeTo);
+            if (from != null && to != null && from != to) {
+                Edge newEdge = new Edge(arrayOfEdges.size(), weight);
+                newEdge.setNodeFrom(from);
+                newEdge.setNodeTo(to);
+                newEdge.m_SpringConst=weight *100;
+                newEdge.m_RestLength = 2;
+                newEdge.setWeight(weight);
+                arrayOfEdges.add(newEdge);
             }
-            Network assembledNetwork = new Network();
+        }
 
+        Network assemble() {
+            Network assembledNetwork = new Network();
             assembledNetwork.setEdgeList(arrayOfEdges);
             assembledNetwork.setNodeList(arrayOfNodes);
+            return assembledNetwork;
+        }
+    }
 
-            if (assembledNetwork.getEdgeList().size() == 0) {
-                validEdges = false;
-            } else {
-                validEdges = true;
+    /**
+     * Edges parsed from one chunk of the edges section, in primitive arrays.
+     */
+    private static class EdgeChunk {
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        double[] weight = new double[1024];
+        int count = 0;
+        //-- Position in the file of the line that starts next section, or -1
+        long sectionEnd = -1;
+
+        void add(int nodeFrom, int nodeTo, double edgeWeight) {
+            if (count == from.length) {
+                int length = 2 * from.length;
+                int[] largerFrom = new int[length];
+                int[] largerTo = new int[length];
+                double[] largerWeight = new double[length];
+                System.arraycopy(from, 0, largerFrom, 0, count);
+                System.arraycopy(to, 0, largerTo, 0, count);
+                System.arraycopy(weight, 0, largerWeight, 0, count);
+                from = largerFrom;
+                to = largerTo;
+                weight = largerWeight;
             }
+            from[count] = nodeFrom;
+            to[count] = nodeTo;
+            weight[count] = edgeWeight;
+            count++;
+        }
+    }
 
-            if (assembledNetwork.getNodeList().size() == 0) {
-                validNodes = false;
-            } else {
-                validNodes = true;
+    /**
+     * Parses lines that start between start and end of the file.
+     * A line that starts before start belongs to the previous chunk, a line that starts
+     * before end is finished even if it goes past end.
+     */
+    private static class ChunkParser implements Callable<EdgeChunk> {
+        private FileChannel channel;
+        private long edgesStart, start, end, fileSize;
+
+        ChunkParser(FileChannel channel, long edgesStart, long start, long end, long fileSize) {
+            this.channel = channel;
+            this.edgesStart = edgesStart;
+            this.start = start;
+            this.end = end;
+            this.fileSize = fileSize;
+        }
+
+        public EdgeChunk call() throws IOException {
+            //-- One byte before start is mapped, to find out if a line starts exactly at start
+            long mapStart = (start > edgesStart) ? start - 1 : start;
+            //-- Mapping ends with the last line that starts before end, however long it is
+            long mapEnd = findLineEnd(channel, end - 1, fileSize);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            PajekTokenizer tokenizer = new PajekTokenizer(buffer);
+            if (start > edgesStart) {
+                tokenizer.skipLine();
             }
 
-            if (!validEdges || !validNodes) {
-                JOptionPane.showMessageDialog(null, "The import file is invalid. Please load another file.");
+            EdgeChunk chunk = new EdgeChunk();
+            long localEnd = end - mapStart;
+            while (tokenizer.getOffset() < localEnd) {
+                long lineStart = tokenizer.getOffset();
+                int c = tokenizer.skipSpaces();
+                if (c == -1) {
+                    break;
+                }
+                if (c == '*') {
+                    chunk.sectionEnd = mapStart + lineStart;
+                    break;
+                }
+                if (tokenizer.nextNumber()) {
+                    int nodeFrom = (int)tokenizer.getNumber();
+                    if (tokenizer.nextNumber()) {
+                        int nodeTo = (int)tokenizer.getNumber();
+                        if (tokenizer.nextNumber()) {
+                            chunk.add(nodeFrom, nodeTo, tokenizer.getNumber());
+                        }
+                    }
+                }
+                tokenizer.skipLine();
             }
+            return chunk;
+        }
 
-            if (test) System.out.println("Network contains " + numberOfNodes + " nodes");
-            sc.close();
-            return assembledNetwork;
+        /**
+         * Returns position after the first line break at or after position, or file size if there is none.
+         * Reads the channel at absolute positions, so chunks can look at the same time.
+         */
+        private static long findLineEnd(FileChannel channel, long position, long fileSize) throws IOException {
+            ByteBuffer block = ByteBuffer.allocate(LINE_END_BLOCK);
+            while (position < fileSize) {
+                block.clear();
+                int count = channel.read(block, position);
+                if (count <= 0) {
+                    break;
+                }
+                for (int i=0; i<count; i++) {
+                    if (block.get(i) == '\n') {
+                        return position + i + 1;
+                    }
+                }
+                position += count;
+            }
+            return fileSize;
         }
-        catch (FileNotFoundException e) {
-            e.printStackTrace();
+    }
+
+    /**
+     * Returns node with given id from the file, ids in the file start from 1.
+     * @param nodesById - nodes indexed by id - 1
+     * @param nodeId - id from the file
+     * @return Node, or null if there is no such node
+     */
+    private static Node findNode(Node[] nodesById, int nodeId) {
+        if (nodeId < 1 || nodeId > nodesById.length) {
             return null;
         }
+        return nodesById[nodeId-1];
+    }
 
+    /**
+     * Returns copy of the array of nodes with larger length.
+     * @param nodesById - nodes indexed by id - 1
+     * @param length - new length
+     * @return array of Node
+     */
+    private static Node[] growNodes(Node[] nodesById, int length) {
+        Node[] larger = new Node[length];
+        System.arraycopy(nodesById, 0, larger, 0, nodesById.length);
+        return larger;
     }
 
 }
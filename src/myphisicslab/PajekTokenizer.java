@@ -0,0 +1,312 @@
+package myphisicslab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * PajekTokenizer Class
+ *
+ * Reads tokens of a Pajek format data file directly from bytes, in a single pass.
+ * Integers and decimal numbers are parsed digit by digit without creating strings,
+ * only labels of nodes become String objects.
+ *
+ * Bytes come either from an InputStream, which is read in blocks into a reused buffer,
+ * or from a ByteBuffer (for example a part of a memory mapped file), which is read up to its limit.
+ */
+public class PajekTokenizer {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    //-- Largest mantissa that every long below it is exactly a double, 2^53
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private InputStream input;
+    private ByteBuffer buffer;
+    private long offset = 0;
+    private byte[] word = new byte[64];
+    private int wordLength = 0;
+    //-- Text of the last number, parsed by Double.parseDouble when it has no exact fast path
+    private byte[] numberText = new byte[32];
+    private int numberLength = 0;
+
+    private double number;
+    private boolean integer;
+
+    /**
+     * Creates tokenizer that reads the stream in blocks.
+     * @param input - stream of a Pajek file, not closed by the tokenizer
+     */
+    public PajekTokenizer(InputStream input) {
+        this.input = input;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Creates tokenizer that reads bytes between position and limit of the buffer.
+     * @param buffer - bytes of a Pajek file, or of a part of it
+     */
+    public PajekTokenizer(ByteBuffer buffer) {
+        this.input = null;
+        this.buffer = buffer;
+        this.offset = -buffer.position();
+    }
+
+    /**
+     * Reads next block of the stream into the buffer.
+     * @return false at the end of input
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (input == null) {
+            return false;
+        }
+        offset += buffer.limit();
+        byte[] array = buffer.array();
+        int count = input.read(array, 0, array.length);
+        if (count <= 0) {
+            buffer.limit(0);
+            return false;
+        }
+        buffer.position(0);
+        buffer.limit(count);
+        return true;
+    }
+
+    /**
+     * Returns number of bytes consumed so far, counted from the start of the stream
+     * or from the initial position of the buffer.
+     * @return long
+     */
+    public long getOffset() {
+        return offset + buffer.position();
+    }
+
+    /**
+     * Returns next byte without consuming it.
+     * @return byte value 0-255, or -1 at the end of input
+     * @throws IOException
+     */
+    public int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xff;
+    }
+
+    /**
+     * Returns next byte and consumes it.
+     * @return byte value 0-255, or -1 at the end of input
+     * @throws IOException
+     */
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    /**
+     * Skips spaces and tabs, stops at the end of the line.
+     * @return next byte, or -1 at the end of input
+     * @throws IOException
+     */
+    public int skipSpaces() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t') {
+            read();
+            c = peek();
+        }
+        return c;
+    }
+
+    /**
+     * Skips the rest of the current line, including the line break.
+     * @throws IOException
+     */
+    public void skipLine() throws IOException {
+        int c = read();
+        while (c != -1 && c != '\n') {
+            c = read();
+        }
+    }
+
+    /**
+     * Reads a word of letters that follows '*' of a section header, for example "Vertices".
+     * The word can be compared with isWord.
+     * @throws IOException
+     */
+    public void readWord() throws IOException {
+        wordLength = 0;
+        int c = peek();
+        while ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            if (wordLength < word.length) {
+                word[wordLength++] = (byte)c;
+            }
+            read();
+            c = peek();
+        }
+    }
+
+    /**
+     * Compares last word read by readWord, ignoring case.
+     * @param expected - lower case word
+     * @return boolean
+     */
+    public boolean isWord(String expected) {
+        if (expected.length() != wordLength) {
+            return false;
+        }
+        for (int i=0; i<wordLength; i++) {
+            if (Character.toLowerCase((char)word[i]) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a label in double quotes. The quotes are kept as part of the label.
+     * @return label, or null if the next token does not start with a quote
+     * @throws IOException
+     */
+    public String readQuoted() throws IOException {
+        if (skipSpaces() != '"') {
+            return null;
+        }
+        wordLength = 0;
+        int c = read();
+        do {
+            if (wordLength == word.length) {
+                byte[] larger = new byte[word.length * 2];
+                System.arraycopy(word, 0, larger, 0, wordLength);
+                word = larger;
+            }
+            word[wordLength++] = (byte)c;
+            c = read();
+        } while (c != -1 && c != '"' && c != '\n');
+        if (c == '"') {
+            word[wordLength++] = (byte)c;
+        }
+        return new String(word, 0, wordLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads next number on the current line. The value is returned by getNumber.
+     * Accepts integers and decimal numbers with optional sign, fraction and exponent.
+     * @return false if there is no number before the end of the line
+     * @throws IOException
+     */
+    public boolean nextNumber() throws IOException {
+        int c = skipSpaces();
+        boolean negative = false;
+        numberLength = 0;
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            appendNumber(read());
+            c = peek();
+        }
+        if ((c < '0' || c > '9') && c != '.') {
+            return false;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        integer = true;
+        while (c >= '0' && c <= '9') {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) digits++;
+            } else {
+                exponent++;
+            }
+            appendNumber(read());
+            c = peek();
+        }
+        if (c == '.') {
+            integer = false;
+            appendNumber(read());
+            c = peek();
+            while (c >= '0' && c <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    exponent--;
+                }
+                appendNumber(read());
+                c = peek();
+            }
+        }
+        if (c == 'e' || c == 'E') {
+            integer = false;
+            appendNumber(read());
+            c = peek();
+            boolean negativeExponent = false;
+            if (c == '-' || c == '+') {
+                negativeExponent = (c == '-');
+                appendNumber(read());
+                c = peek();
+            }
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                if (value < 10000) value = value * 10 + (c - '0');
+                appendNumber(read());
+                c = peek();
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (mantissa > MAX_EXACT_MANTISSA || exponent <= -POWERS_OF_TEN.length
+                || exponent >= POWERS_OF_TEN.length) {
+            //-- Mantissa or power of ten is not an exact double, rounding twice could differ
+            number = Double.parseDouble(new String(numberText, 0, numberLength, StandardCharsets.US_ASCII));
+            return true;
+        }
+        if (exponent == 0) {
+            number = mantissa;
+        } else if (exponent > 0) {
+            //-- Product and quotient of two exact doubles are correctly rounded, as Double.parseDouble
+            number = mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            number = mantissa / POWERS_OF_TEN[-exponent];
+        }
+        if (negative) {
+            number = -number;
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a byte of the current number for Double.parseDouble.
+     * @param c - byte value
+     */
+    private void appendNumber(int c) {
+        if (numberLength == numberText.length) {
+            byte[] larger = new byte[numberText.length * 2];
+            System.arraycopy(numberText, 0, larger, 0, numberLength);
+            numberText = larger;
+        }
+        numberText[numberLength++] = (byte)c;
+    }
+
+    /**
+     * Returns value of the last number read by nextNumber.
+     * @return double
+     */
+    public double getNumber() {
+        return number;
+    }
+
+    /**
+     * Returns true if the last number read by nextNumber had no fraction or exponent.
+     * @return boolean
+     */
+    public boolean isInteger() {
+        return integer;
+    }
+}
@@ -0,0 +1,241 @@
+package myphisicslab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * RelaxedLayoutCache Class
+ *
+ * Folder of relaxed initial positions shared by all network files, so a network whose content
+ * has been relaxed before does not need relaxation again, even if it is read from another file.
+ * Each entry is a NetworkSnapshot named after the SHA-256 hash of the network content:
+ * node ids and charges, and edges with their nodes, weight, spring constant and rest length.
+ * Labels and positions are not part of the hash. Settings of the relaxation are hashed together
+ * with the content, so positions relaxed for another pass time, step or solver are not reused.
+ *
+ * Total size of the folder is bounded, least recently used entries are deleted first.
+ * Use of an entry updates its modification time, which is the order of eviction.
+ */
+public class RelaxedLayoutCache {
+    public static final long DEFAULT_SIZE_LIMIT = 256L * 1024 * 1024;
+    public static final String METHOD_SWEEP = "sweep"; //-- FrequencySweep.relax
+    public static final String METHOD_SIMULATION = "simulation"; //-- Network2DSim on the simulated clock
+
+    private File directory;
+    private long sizeLimit;
+
+    /**
+     * @param directory - folder of cached snapshots, created when the first entry is stored
+     * @param sizeLimit - largest total size of the folder in bytes
+     */
+    public RelaxedLayoutCache(File directory, long sizeLimit) {
+        this.directory = directory;
+        this.sizeLimit = sizeLimit;
+    }
+
+    /**
+     * Returns the cache in the home folder of the user with the default size limit
+     * @return RelaxedLayoutCache
+     */
+    public static RelaxedLayoutCache createDefault() {
+        return new RelaxedLayoutCache(getDefaultDirectory(), DEFAULT_SIZE_LIMIT);
+    }
+
+    /**
+     * Returns default folder of the cache
+     * @return File
+     */
+    public static File getDefaultDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".complexnetwork"), "relaxed");
+    }
+
+    /**
+     * Returns settings of a relaxation as text, the same settings always give the same text
+     * @param method - METHOD_SWEEP or METHOD_SIMULATION
+     * @param relaxTime - time of relaxation
+     * @param stepSize - time step of the solver
+     * @param solver - one of SpectrumParameters.SOLVERS
+     * @return String
+     */
+    public static String getRelaxation(String method, double relaxTime, double stepSize, String solver) {
+        return method + ",relaxTime=" + relaxTime + ",stepSize=" + stepSize + ",solver=" + solver;
+    }
+
+    /**
+     * Returns hash of the network content as hexadecimal text.
+     * @param network - loaded network
+     * @return String of 64 characters
+     */
+    public static String getKey(Network network) {
+        return toHex(digestContent(network).digest());
+    }
+
+    /**
+     * Returns hash of the network content and settings of its relaxation as hexadecimal text.
+     * This is the key of an entry.
+     * @param network - loaded network
+     * @param relaxation - settings from getRelaxation
+     * @return String of 64 characters
+     */
+    public static String getKey(Network network, String relaxation) {
+        MessageDigest digest = digestContent(network);
+        digest.update(relaxation.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Returns digest updated with the network content
+     * @param network - loaded network
+     * @return MessageDigest
+     */
+    private static MessageDigest digestContent(Network network) {
+        ArrayList<Node> nodeList = network.getNodeList();
+        ArrayList<Edge> edgeList = network.getEdgeList();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //-- Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 8 + 8);
+        IdentityHashMap<Node, Integer> nodeIndex = new IdentityHashMap<Node, Integer>(nodeList.size());
+        buffer.putInt(nodeList.size()).putInt(edgeList.size());
+        digest.update(buffer.array(), 0, buffer.position());
+        for (int n=0; n<nodeList.size(); n++) {
+            Node node = nodeList.get(n);
+            buffer.clear();
+            buffer.putInt(node.getId()).put((byte)(node.getChargeIfPositive() ? 1 : 0));
+            digest.update(buffer.array(), 0, buffer.position());
+            nodeIndex.put(node, n);
+        }
+        for (Edge edge : edgeList) {
+            buffer.clear();
+            buffer.putInt(nodeIndex.get(edge.getNodeFrom())).putInt(nodeIndex.get(edge.getNodeTo()));
+            buffer.putDouble(edge.getWeight()).putDouble(edge.m_SpringConst).putDouble(edge.m_RestLength);
+            digest.update(buffer.array(), 0, buffer.position());
+        }
+        return digest;
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder key = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the file of an entry
+     * @param key - hash of the network content and relaxation
+     * @return File
+     */
+    public File getFile(String key) {
+        return new File(directory, key + NetworkSnapshot.EXTENSION);
+    }
+
+    /**
+     * Copies cached relaxed positions into initial positions of the nodes and marks the network
+     * as relaxed. Entry that can not be read or does not match the network is ignored.
+     * @param network - loaded network
+     * @param key - hash of the network content and relaxation
+     * @return true if positions were found
+     */
+    public synchronized boolean load(Network network, String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return false;
+        }
+        Network cachedNetwork;
+        try {
+            cachedNetwork = NetworkSnapshot.read(file);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        ArrayList<Node> nodeList = network.getNodeList();
+        ArrayList<Node> cachedNodes = cachedNetwork.getNodeList();
+        if (!cachedNetwork.isRelaxed() || cachedNodes.size() != nodeList.size()
+                || cachedNetwork.getEdgeList().size() != network.getEdgeList().size()) {
+            return false;
+        }
+        for (int n=0; n<nodeList.size(); n++) {
+            nodeList.get(n).setInitPosX(cachedNodes.get(n).getInitPosX());
+            nodeList.get(n).setInitPosY(cachedNodes.get(n).getInitPosY());
+        }
+        network.setRelaxed(true);
+        file.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Stores relaxed initial positions of the network and evicts least recently used entries
+     * above the size limit. Failure to store is reported but does not stop the caller.
+     * @param network - network with relaxed initial positions
+     * @param key - hash of the network content and relaxation
+     */
+    public synchronized void store(Network network, String key) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Can not create layout cache folder: " + directory);
+            return;
+        }
+        Network relaxedNetwork = new Network();
+        relaxedNetwork.setNodeList(network.getNodeList());
+        relaxedNetwork.setEdgeList(network.getEdgeList());
+        relaxedNetwork.setRelaxed(true);
+        File file = getFile(key);
+        try {
+            NetworkSnapshot.write(relaxedNetwork, file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        evict(file);
+    }
+
+    /**
+     * Deletes the oldest entries until the folder fits the size limit, the newest entry is kept.
+     * @param newest - entry that has just been stored
+     */
+    private void evict(File newest) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalSize = 0;
+        ArrayList<File> entries = new ArrayList<File>(files.length);
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(NetworkSnapshot.EXTENSION)) {
+                entries.add(file);
+                totalSize += file.length();
+            }
+        }
+        File[] oldestFirst = entries.toArray(new File[entries.size()]);
+        Arrays.sort(oldestFirst, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (int i=0; i<oldestFirst.length && totalSize > sizeLimit; i++) {
+            File file = oldestFirst[i];
+            if (file.equals(newest)) {
+                continue;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                totalSize -= size;
+            }
+        }
+    }
+}
@@ -6,10 +6,20 @@ import java.awt.event.*;
 /////////////////////////////////////////////////////////////////////////////////
 public class RungeKutta implements DiffEqSolver {
   DiffEq ode;
+  TimedDiffEq timedOde;  // same as ode if the equation depends on time, otherwise null
   double[] inp,k1,k2,k3,k4;
 
   public RungeKutta(DiffEq ode) {
     this.ode = ode;
+    this.timedOde = (ode instanceof TimedDiffEq) ? (TimedDiffEq)ode : null;
+  }
+
+  // evaluates the equation, passing time of the stage if the equation depends on time
+  private void evaluate(double[] x, double[] change, double time) {
+    if (timedOde != null)
+      timedOde.evaluate(x, change, time);
+    else
+      ode.evaluate(x, change);
   }
 
   // Runge-Kutta method for solving ordinary differential equations
@@ -29,16 +39,17 @@ public class RungeKutta implements DiffEqSolver {
       k4 = new double[N];
     }
     int i;
-    ode.evaluate(vars, k1);  // evaluate at time t
+    double t = (timedOde != null) ? timedOde.getTime() : 0;
+    evaluate(vars, k1, t);  // evaluate at time t
     for (i=0; i<N; i++)
       inp[i] = vars[i]+k1[i]*stepSize/2; // set up input to diffeqs
-    ode.evaluate(inp, k2);   // evaluate at time t+stepSize/2
+    evaluate(inp, k2, t+stepSize/2);   // evaluate at time t+stepSize/2
     for (i=0; i<N; i++)
       inp[i] = vars[i]+k2[i]*stepSize/2; // set up input to diffeqs
-    ode.evaluate(inp, k3);   // evaluate at time t+stepSize/2
+    evaluate(inp, k3, t+stepSize/2);   // evaluate at time t+stepSize/2
     for (i=0; i<N; i++)
       inp[i] = vars[i]+k3[i]*stepSize; // set up input to diffeqs
-    ode.evaluate(inp, k4);  // evaluate at time t+stepSize
+    evaluate(inp, k4, t+stepSize);  // evaluate at time t+stepSize
     // determine which vars should be modified (calculated)
     boolean[] calc = ode.getCalc();
     // modify the variables
@@ -0,0 +1,350 @@
+package myphisicslab;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * ShiftInvertLanczos Class
+ *
+ * Finds the lowest eigenvalues and eigenvectors of a large sparse symmetric positive
+ * semidefinite matrix A. Lanczos iteration is applied to (A - shift I)^-1, whose largest
+ * eigenvalues 1/(lambda - shift) belong to the eigenvalues lambda of A closest to the shift,
+ * so with a shift just below zero the lowest modes converge first.
+ *
+ * The shift is negative, so A - shift I is positive definite and each product with its inverse
+ * is a conjugate gradient solve with diagonal preconditioning. The matrix is never factorised.
+ * Lanczos vectors are kept and fully reorthogonalised, memory grows with the matrix plus
+ * (number of Lanczos vectors) * size, and the number of Lanczos vectors grows with the number
+ * of wanted modes, not with the size of the matrix.
+ *
+ * As any single vector Krylov method, it finds one vector of an eigenvalue of multiplicity
+ * higher than one, for example of rigid body motions.
+ */
+public class ShiftInvertLanczos {
+    //-- Ritz pair is converged when its residual is below this fraction of its value
+    private static final double CONVERGENCE_TOLERANCE = 1e-8;
+    //-- Relative residual of the conjugate gradient solves
+    private static final double SOLVE_TOLERANCE = 1e-10;
+    //-- Ritz values are checked after this many Lanczos vectors
+    private static final int CHECK_INTERVAL = 10;
+
+    private SparseSymmetricMatrix matrix;
+    private double shift;
+    private int size;
+    private int basisLimit = 0;
+    private long solveIterationCount = 0;
+
+    private double[] eigenvalues = new double[0];
+    private double[][] eigenvectors = new double[0][];
+
+    //-- Work vectors of the conjugate gradient solve
+    private double[] residual, direction, product, preconditioned, inverseDiagonal;
+
+    /**
+     * @param matrix - symmetric positive semidefinite matrix
+     * @param shift - negative value, below all eigenvalues
+     */
+    public ShiftInvertLanczos(SparseSymmetricMatrix matrix, double shift) {
+        if (shift >= 0) {
+            throw new IllegalArgumentException("Shift must be negative: " + shift);
+        }
+        this.matrix = matrix;
+        this.shift = shift;
+        this.size = matrix.getSize();
+    }
+
+    /**
+     * Sets the largest number of Lanczos vectors, 0 for the default of 3 * modes + 60.
+     * @param basisLimit
+     */
+    public void setBasisLimit(int basisLimit) {
+        this.basisLimit = basisLimit;
+    }
+
+    /**
+     * Returns number of conjugate gradient iterations of all solves so far
+     * @return long
+     */
+    public long getSolveIterationCount() {
+        return solveIterationCount;
+    }
+
+    /**
+     * Finds the lowest eigenvalues up to eigenvalueLimit, at most modeLimit of them.
+     * Results are returned by getEigenvalues and getEigenvectors.
+     * @param modeLimit - largest number of eigenvalues
+     * @param eigenvalueLimit - largest eigenvalue that is wanted
+     * @return number of eigenvalues found
+     */
+    public int solve(int modeLimit, double eigenvalueLimit) {
+        int maxBasis = Math.min(size, (basisLimit > 0) ? basisLimit : 3 * modeLimit + 60);
+        if (maxBasis == 0 || modeLimit <= 0) {
+            eigenvalues = new double[0];
+            eigenvectors = new double[0][];
+            return 0;
+        }
+        residual = new double[size];
+        direction = new double[size];
+        product = new double[size];
+        preconditioned = new double[size];
+        inverseDiagonal = new double[size];
+        for (int i=0; i<size; i++) {
+            inverseDiagonal[i] = 1 / (matrix.getDiagonal(i) - shift);
+        }
+
+        double[][] basis = new double[maxBasis][];
+        double[] alpha = new double[maxBasis];
+        double[] beta = new double[maxBasis];
+        Random random = new Random(1);
+        basis[0] = randomVector(random, basis, 0);
+
+        double[] w = new double[size];
+        int m = 0;
+        while (true) {
+            applyInverse(basis[m], w);
+            alpha[m] = dot(basis[m], w);
+            //-- Full reorthogonalisation, repeated once as Gram-Schmidt loses orthogonality
+            for (int repeat=0; repeat<2; repeat++) {
+                for (int i=0; i<=m; i++) {
+                    double c = dot(basis[i], w);
+                    for (int k=0; k<size; k++) {
+                        w[k] -= c * basis[i][k];
+                    }
+                }
+            }
+            beta[m] = Math.sqrt(dot(w, w));
+            m++;
+
+            boolean exhausted = (m == maxBasis);
+            if (m % CHECK_INTERVAL == 0 || exhausted) {
+                if (extractModes(basis, alpha, beta, m, modeLimit, eigenvalueLimit, exhausted)) {
+                    break;
+                }
+            }
+
+            if (beta[m - 1] <= CONVERGENCE_TOLERANCE * Math.abs(alpha[m - 1])) {
+                //-- Invariant subspace is found, continue with a new vector orthogonal to it
+                beta[m - 1] = 0;
+                basis[m] = randomVector(random, basis, m);
+            } else {
+                basis[m] = new double[size];
+                for (int k=0; k<size; k++) {
+                    basis[m][k] = w[k] / beta[m - 1];
+                }
+            }
+        }
+        residual = direction = product = preconditioned = inverseDiagonal = null;
+        return eigenvalues.length;
+    }
+
+    /**
+     * Solves the tridiagonal matrix of m Lanczos vectors and keeps the wanted modes
+     * if they are all converged.
+     * @return true if the wanted modes are found, or if the basis can not grow
+     */
+    private boolean extractModes(double[][] basis, double[] alpha, double[] beta, int m,
+                                 int modeLimit, double eigenvalueLimit, boolean exhausted) {
+        double[] theta = new double[m];
+        double[] offDiagonal = new double[m];
+        System.arraycopy(alpha, 0, theta, 0, m);
+        System.arraycopy(beta, 0, offDiagonal, 0, m - 1);
+        double[][] s = new double[m][m];
+        for (int i=0; i<m; i++) {
+            s[i][i] = 1;
+        }
+        tridiagonalQL(theta, offDiagonal, s);
+
+        //-- Largest theta is the lowest eigenvalue of A
+        Integer[] order = new Integer[m];
+        for (int i=0; i<m; i++) {
+            order[i] = i;
+        }
+        final double[] values = theta;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(values[b], values[a]);
+            }
+        });
+
+        int found = 0;
+        boolean complete = false;
+        for (int j=0; j<m; j++) {
+            int i = order[j];
+            if (theta[i] <= 0) {
+                complete = true;
+                break;
+            }
+            double error = Math.abs(beta[m - 1] * s[m - 1][i]);
+            if (error > CONVERGENCE_TOLERANCE * Math.abs(theta[i]) && !exhausted) {
+                break;
+            }
+            if (shift + 1/theta[i] > eigenvalueLimit || found == modeLimit) {
+                complete = true;
+                break;
+            }
+            found++;
+        }
+        if (found == modeLimit) {
+            complete = true;
+        }
+        if (!complete && !exhausted) {
+            return false;
+        }
+
+        eigenvalues = new double[found];
+        eigenvectors = new double[found][];
+        for (int j=0; j<found; j++) {
+            int i = order[j];
+            eigenvalues[j] = shift + 1/theta[i];
+            double[] vector = new double[size];
+            for (int b=0; b<m; b++) {
+                double c = s[b][i];
+                for (int k=0; k<size; k++) {
+                    vector[k] += c * basis[b][k];
+                }
+            }
+            eigenvectors[j] = vector;
+        }
+        return true;
+    }
+
+    /**
+     * Implicit QL method for a symmetric tridiagonal matrix.
+     * @param d - diagonal, replaced by eigenvalues
+     * @param e - off diagonal, e[i] between rows i and i + 1, destroyed
+     * @param z - identity matrix, replaced by eigenvectors in columns
+     */
+    static void tridiagonalQL(double[] d, double[] e, double[][] z) {
+        int n = d.length;
+        for (int l=0; l<n; l++) {
+            int iteration = 0;
+            int m;
+            do {
+                for (m=l; m<n-1; m++) {
+                    double dd = Math.abs(d[m]) + Math.abs(d[m + 1]);
+                    if (Math.abs(e[m]) <= 1e-15 * dd)
+                        break;
+                }
+                if (m != l) {
+                    if (iteration++ == 60)
+                        break;
+                    double g = (d[l + 1] - d[l]) / (2 * e[l]);
+                    double r = Math.hypot(g, 1);
+                    g = d[m] - d[l] + e[l] / (g + (g >= 0 ? r : -r));
+                    double s = 1, c = 1, p = 0;
+                    int i;
+                    for (i=m-1; i>=l; i--) {
+                        double f = s * e[i];
+                        double b = c * e[i];
+                        r = Math.hypot(f, g);
+                        e[i + 1] = r;
+                        if (r == 0) {
+                            d[i + 1] -= p;
+                            e[m] = 0;
+                            break;
+                        }
+                        s = f / r;
+                        c = g / r;
+                        g = d[i + 1] - p;
+                        r = (d[i] - g) * s + 2 * c * b;
+                        p = s * r;
+                        d[i + 1] = g + p;
+                        g = c * r - b;
+                        for (int k=0; k<n; k++) {
+                            f = z[k][i + 1];
+                            z[k][i + 1] = s * z[k][i] + c * f;
+                            z[k][i] = c * z[k][i] - s * f;
+                        }
+                    }
+                    if (r == 0 && i >= l)
+                        continue;
+                    d[l] -= p;
+                    e[l] = g;
+                    e[m] = 0;
+                }
+            } while (m != l);
+        }
+    }
+
+    /**
+     * Solves (A - shift I) x = b with preconditioned conjugate gradient, starting from zero.
+     */
+    private void applyInverse(double[] b, double[] x) {
+        double normB = Math.sqrt(dot(b, b));
+        for (int i=0; i<size; i++) {
+            x[i] = 0;
+            residual[i] = b[i];
+            preconditioned[i] = inverseDiagonal[i] * residual[i];
+            direction[i] = preconditioned[i];
+        }
+        double rz = dot(residual, preconditioned);
+        for (int iteration=0; iteration<10 * size + 100; iteration++) {
+            if (Math.sqrt(dot(residual, residual)) <= SOLVE_TOLERANCE * normB) {
+                break;
+            }
+            matrix.multiply(direction, product);
+            for (int i=0; i<size; i++) {
+                product[i] -= shift * direction[i];
+            }
+            double step = rz / dot(direction, product);
+            for (int i=0; i<size; i++) {
+                x[i] += step * direction[i];
+                residual[i] -= step * product[i];
+                preconditioned[i] = inverseDiagonal[i] * residual[i];
+            }
+            double rzNext = dot(residual, preconditioned);
+            for (int i=0; i<size; i++) {
+                direction[i] = preconditioned[i] + (rzNext / rz) * direction[i];
+            }
+            rz = rzNext;
+            solveIterationCount++;
+        }
+    }
+
+    /**
+     * Returns random unit vector orthogonal to the first count vectors of the basis
+     */
+    private double[] randomVector(Random random, double[][] basis, int count) {
+        double[] vector = new double[size];
+        for (int k=0; k<size; k++) {
+            vector[k] = random.nextDouble() - 0.5;
+        }
+        for (int i=0; i<count; i++) {
+            double c = dot(basis[i], vector);
+            for (int k=0; k<size; k++) {
+                vector[k] -= c * basis[i][k];
+            }
+        }
+        double norm = Math.sqrt(dot(vector, vector));
+        for (int k=0; k<size; k++) {
+            vector[k] /= norm;
+        }
+        return vector;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i=0; i<a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns eigenvalues found by the last solve in ascending order
+     * @return array of double
+     */
+    public double[] getEigenvalues() {
+        return eigenvalues;
+    }
+
+    /**
+     * Returns unit eigenvectors found by the last solve, in the order of eigenvalues
+     * @return array of vectors
+     */
+    public double[][] getEigenvectors() {
+        return eigenvectors;
+    }
+}
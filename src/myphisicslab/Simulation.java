@@ -82,6 +82,10 @@ public abstract class Simulation implements Runnable, Graphable, MouseDragHandle
   protected double timeMultiplier = 8;
   protected boolean timeNowReset = false;
   public boolean simulationActive = true;
+  // when true, time advances only by the step of the solver, not by the system clock
+  protected boolean simulatedTime = false;
+  // how long simulated time mode keeps stepping before the canvas is repainted
+  private static final long FRAME_MILLIS = 40;
 
   public Simulation(Container applet, int numVars) {
     this(applet);
@@ -342,6 +346,7 @@ public abstract class Simulation implements Runnable, Graphable, MouseDragHandle
 
   protected void advance(double time) {
     odeSolver.step(time);
+    simTime += time;
     modifyObjects();
   }
 
@@ -349,7 +354,15 @@ public abstract class Simulation implements Runnable, Graphable, MouseDragHandle
   public void run() {
     if (m_Animating) {
       if (!realTime) {
-        advance(getTimeStep());
+        if (simulatedTime) {
+          // time does not depend on the clock, so take as many steps as fit into one frame
+          long frameEnd = System.currentTimeMillis() + FRAME_MILLIS;
+          do {
+            advance(getTimeStep());
+          } while (simulatedTime && simulationActive && System.currentTimeMillis() < frameEnd);
+        } else {
+          advance(getTimeStep());
+        }
         cvs.repaint();
       } else {
         if (graph != null) {
@@ -380,6 +393,14 @@ public abstract class Simulation implements Runnable, Graphable, MouseDragHandle
   public abstract void modifyObjects();
 
   public double getTime() {
+    if (simulatedTime) {
+      // simulated clock, advanced only in advance() by the time step
+      if (timeNowReset) {
+        simTime = 0;
+        timeNowReset = false;
+      }
+      return simulationActive ? simTime : 0;
+    }
     double now;
     long systemTime = System.currentTimeMillis();
     double timeElapsed = 0;
@@ -403,6 +424,9 @@ public abstract class Simulation implements Runnable, Graphable, MouseDragHandle
   }
 
   public double getTimeStep() {
+    if (simulatedTime) {
+      return simulationActive ? 0.01 * timeMultiplier : 0;
+    }
     /*
     double now = (double)System.currentTimeMillis()/10000;
     // figure out how much time has passed since last simulation step
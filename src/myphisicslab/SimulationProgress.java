@@ -0,0 +1,111 @@
+package myphisicslab;
+
+import org.jfree.data.xy.XYSeries;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * SimulationProgress Class
+ *
+ * Progress of a running simulation, written by the simulation thread and read by a Swing timer.
+ * Values are volatile, so the simulation thread only stores them and never touches Swing
+ * components, while the event thread refreshes labels at its own rate.
+ * Finished frequency points are queued in the same way and moved into the chart series by the timer.
+ */
+public class SimulationProgress {
+    //-- Marks the start of a new pass in the queue of points
+    private static final double[] NEW_PASS = new double[0];
+
+    private volatile boolean running = false;
+    private volatile long startMillis = 0;
+    private volatile String passText = "";
+    private final ConcurrentLinkedQueue<double[]> points = new ConcurrentLinkedQueue<double[]>();
+
+    public SimulationProgress() {
+    }
+
+    /**
+     * Marks the simulation as running from now, elapsed time is counted from this moment.
+     */
+    public void start() {
+        points.clear();
+        startMillis = System.currentTimeMillis();
+        running = true;
+    }
+
+    /**
+     * Marks the simulation as stopped, elapsed time is no longer updated.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Returns true between start and stop
+     * @return boolean
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns seconds since start
+     * @return double
+     */
+    public double getElapsedSeconds() {
+        return (System.currentTimeMillis() - startMillis) / 1000.0;
+    }
+
+    /**
+     * Publishes description of current pass, for example "Current: 2/3 pass"
+     * @param passText
+     */
+    public void setPassText(String passText) {
+        this.passText = passText;
+    }
+
+    /**
+     * Returns last published description of current pass
+     * @return String
+     */
+    public String getPassText() {
+        return passText;
+    }
+
+    /**
+     * Publishes a finished frequency point of the current pass
+     * @param frequency - frequency of the point
+     * @param energy - average maximum energy at the frequency
+     */
+    public void addPoint(double frequency, double energy) {
+        points.add(new double[] {frequency, energy});
+    }
+
+    /**
+     * Publishes start of a new pass, points published before it are cleared from the series
+     */
+    public void startPass() {
+        points.add(NEW_PASS);
+    }
+
+    /**
+     * Moves published points into the series of the current pass, must be called on the event thread.
+     * Listeners of the series are notified once.
+     * @param series - series of the current pass
+     */
+    public void drainPoints(XYSeries series) {
+        boolean changed = false;
+        double[] point;
+        while ((point = points.poll()) != null) {
+            if (point == NEW_PASS) {
+                series.clear();
+            } else {
+                series.add(point[0], point[1], false);
+                changed = true;
+            }
+        }
+        if (changed) {
+            series.fireSeriesChanged();
+        }
+    }
+}
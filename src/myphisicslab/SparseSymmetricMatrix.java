@@ -0,0 +1,101 @@
+package myphisicslab;
+
+/**
+ * SparseSymmetricMatrix Class
+ *
+ * Symmetric matrix in compressed sparse row (CSR) format, as AdjacencyIndex stores Edges.
+ * Each row keeps the columns and values of its nonzero elements, both halves of the matrix
+ * are stored so that a row is complete. A column can appear more than once in a row,
+ * values of the same column are added together.
+ */
+public class SparseSymmetricMatrix {
+    private int size;
+    private int[] rowStart;
+    private int[] columns;
+    private double[] values;
+    private double[] diagonal;
+
+    /**
+     * @param rowStart - position of the first element of each row, size + 1 values
+     * @param columns - column of each element
+     * @param values - value of each element
+     */
+    public SparseSymmetricMatrix(int[] rowStart, int[] columns, double[] values) {
+        this.size = rowStart.length - 1;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+        diagonal = new double[size];
+        for (int i=0; i<size; i++) {
+            for (int entry=rowStart[i]; entry<rowStart[i + 1]; entry++) {
+                if (columns[entry] == i) {
+                    diagonal[i] += values[entry];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns number of rows and columns
+     * @return int
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns number of stored elements
+     * @return int
+     */
+    public int getEntryCount() {
+        return rowStart[size];
+    }
+
+    /**
+     * Returns position of the first element of each row, size + 1 values
+     * @return array of int
+     */
+    public int[] getRowStart() {
+        return rowStart;
+    }
+
+    /**
+     * Returns column of each element
+     * @return array of int
+     */
+    public int[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns value of each element
+     * @return array of double
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Returns element on the diagonal
+     * @param i - row index
+     * @return double
+     */
+    public double getDiagonal(int i) {
+        return diagonal[i];
+    }
+
+    /**
+     * Multiplies a vector by the matrix, result = matrix * x.
+     * @param x - vector of size values
+     * @param result - output vector of size values
+     */
+    public void multiply(double[] x, double[] result) {
+        for (int i=0; i<size; i++) {
+            double sum = 0;
+            for (int entry=rowStart[i]; entry<rowStart[i + 1]; entry++) {
+                sum += values[entry] * x[columns[entry]];
+            }
+            result[i] = sum;
+        }
+    }
+}
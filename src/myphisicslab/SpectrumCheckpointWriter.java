@@ -0,0 +1,285 @@
+package myphisicslab;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * SpectrumCheckpointWriter Class
+ *
+ * Streams frequency points of a sweep to disk as they finish, so that a long sweep that stops
+ * half way can continue where it stopped instead of starting again.
+ *
+ * Every point is appended as a line of pass, frequency index, frequency and energy to a points
+ * CSV file through a buffered writer. Periodically, and when a pass is complete, the points file
+ * is synced to disk and a checkpoint file is replaced with its synced length and, with warm start,
+ * the state each pass continues from. Lines after the synced length are dropped on resume, as they
+ * may be incomplete, and their points run again.
+ *
+ * The checkpoint starts with a description of the network and parameters, a checkpoint with
+ * another description belongs to another sweep and is not resumed.
+ *
+ * Checkpoint layout, all values big endian:
+ * int magic, int version, UTF description, long synced length of the points file,
+ * int pass count, int frequency count,
+ * for each pass: int state length (-1 for no state), state values as doubles.
+ */
+public class SpectrumCheckpointWriter implements FrequencySweep.PointListener {
+    //-- "CNAC", Complex Network Analysis Checkpoint
+    private static final int MAGIC = 0x434E4143;
+    public static final int VERSION = 1;
+    public static final long DEFAULT_CHECKPOINT_MILLIS = 30000;
+    private static final String HEADER = "Pass,Frequency index,Frequency,Energy";
+
+    private File pointsFile;
+    private File checkpointFile;
+    private String description;
+    private double[] frequencies;
+    private double[][] energies;
+    private double[][] states;
+    private int[] remainingPoints;
+    private long checkpointMillis = DEFAULT_CHECKPOINT_MILLIS;
+    private long lastCheckpoint;
+    private int resumedPoints = 0;
+
+    private FileOutputStream stream;
+    private BufferedWriter writer;
+
+    /**
+     * Opens points and checkpoint files, and reads the points of a previous run of the same sweep.
+     * @param pointsFile - CSV file of points
+     * @param checkpointFile - checkpoint of the points file
+     * @param description - description of the network and parameters of the sweep
+     * @param frequencies - frequencies of every pass
+     * @param passes - number of passes
+     * @throws IOException if the files can not be written
+     */
+    public SpectrumCheckpointWriter(File pointsFile, File checkpointFile, String description,
+                                    double[] frequencies, int passes) throws IOException {
+        this.pointsFile = pointsFile;
+        this.checkpointFile = checkpointFile;
+        this.description = description;
+        this.frequencies = frequencies;
+        energies = new double[passes][frequencies.length];
+        states = new double[passes][];
+        remainingPoints = new int[passes];
+        for (int pass=0; pass<passes; pass++) {
+            Arrays.fill(energies[pass], Double.NaN);
+        }
+
+        long syncedLength = readCheckpoint();
+        boolean resumed = false;
+        if (syncedLength > 0 && pointsFile.isFile() && pointsFile.length() >= syncedLength) {
+            try {
+                try (RandomAccessFile file = new RandomAccessFile(pointsFile, "rw")) {
+                    file.setLength(syncedLength);
+                }
+                readPoints();
+                resumed = true;
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        if (resumed) {
+            stream = new FileOutputStream(pointsFile, true);
+            writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        } else {
+            //-- Nothing to resume, the sweep starts again
+            for (int pass=0; pass<passes; pass++) {
+                Arrays.fill(energies[pass], Double.NaN);
+                states[pass] = null;
+            }
+            resumedPoints = 0;
+            stream = new FileOutputStream(pointsFile, false);
+            writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            writer.write(HEADER);
+            writer.newLine();
+        }
+        for (int pass=0; pass<passes; pass++) {
+            for (int i=0; i<frequencies.length; i++) {
+                if (Double.isNaN(energies[pass][i])) {
+                    remainingPoints[pass]++;
+                }
+            }
+        }
+        checkpoint();
+    }
+
+    /**
+     * Sets the time between checkpoints, a checkpoint is also written when a pass is complete
+     * @param checkpointMillis - time in milliseconds
+     */
+    public void setCheckpointMillis(long checkpointMillis) {
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    /**
+     * Returns energy of each pass and frequency, NaN for points that are not known yet.
+     * Passed to FrequencySweep.resumePasses, which fills in the rest.
+     * @return array of passes
+     */
+    public double[][] getEnergies() {
+        return energies;
+    }
+
+    /**
+     * Returns state each pass continues from with warm start, null for a pass without state
+     * @return array of passes
+     */
+    public double[][] getStates() {
+        return states;
+    }
+
+    /**
+     * Returns number of points read back from a previous run
+     * @return int
+     */
+    public int getResumedPoints() {
+        return resumedPoints;
+    }
+
+    @Override
+    public synchronized void pointFinished(int pass, int index, double energy, double[] state) {
+        try {
+            writer.write(pass + "," + index + "," + frequencies[index] + "," + energy);
+            writer.newLine();
+            energies[pass][index] = energy;
+            if (state != null) {
+                states[pass] = state;
+            }
+            remainingPoints[pass]--;
+            if (remainingPoints[pass] == 0 || System.currentTimeMillis() - lastCheckpoint >= checkpointMillis) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Syncs the points file to disk and replaces the checkpoint with its length.
+     * The checkpoint is written under a temporary name, synced and then renamed,
+     * so there is always a complete checkpoint on disk.
+     * @throws IOException
+     */
+    public synchronized void checkpoint() throws IOException {
+        writer.flush();
+        stream.getFD().sync();
+        long syncedLength = stream.getChannel().size();
+
+        File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream checkpointStream = new FileOutputStream(temporaryFile)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(checkpointStream));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeUTF(description);
+            output.writeLong(syncedLength);
+            output.writeInt(energies.length);
+            output.writeInt(frequencies.length);
+            for (double[] state : states) {
+                if (state == null) {
+                    output.writeInt(-1);
+                } else {
+                    output.writeInt(state.length);
+                    for (double value : state) {
+                        output.writeDouble(value);
+                    }
+                }
+            }
+            output.flush();
+            checkpointStream.getFD().sync();
+        }
+        Files.move(temporaryFile.toPath(), checkpointFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastCheckpoint = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes the last checkpoint and closes the points file.
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        checkpoint();
+        writer.close();
+    }
+
+    /**
+     * Deletes points and checkpoint files, once the results are exported.
+     */
+    public void delete() {
+        pointsFile.delete();
+        checkpointFile.delete();
+    }
+
+    /**
+     * Reads the checkpoint of the same sweep, if there is one, and keeps its states.
+     * @return synced length of the points file, 0 if there is nothing to resume
+     */
+    private long readCheckpoint() {
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(checkpointFile)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION || !input.readUTF().equals(description)) {
+                return 0;
+            }
+            long syncedLength = input.readLong();
+            if (input.readInt() != energies.length || input.readInt() != frequencies.length) {
+                return 0;
+            }
+            for (int pass=0; pass<energies.length; pass++) {
+                int length = input.readInt();
+                if (length >= 0) {
+                    states[pass] = new double[length];
+                    for (int i=0; i<length; i++) {
+                        states[pass][i] = input.readDouble();
+                    }
+                }
+            }
+            return syncedLength;
+        } catch (IOException e) {
+            //-- Damaged checkpoint, the sweep starts again
+            System.err.println("Checkpoint can not be read: " + checkpointFile);
+            Arrays.fill(states, null);
+            return 0;
+        }
+    }
+
+    /**
+     * Reads points of the synced part of the points file.
+     */
+    private void readPoints() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(pointsFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Not a points file: " + pointsFile);
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                int pass = Integer.parseInt(values[0]);
+                int index = Integer.parseInt(values[1]);
+                energies[pass][index] = Double.parseDouble(values[3]);
+                resumedPoints++;
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Points file is corrupted: " + pointsFile, e);
+        }
+    }
+}
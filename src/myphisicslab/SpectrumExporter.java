@@ -0,0 +1,208 @@
+package myphisicslab;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * SpectrumExporter Class
+ *
+ * Writes results of a spectrum calculation to the destination folder:
+ * a CSV file with frequencies and energies of each pass followed by the parameters of the run,
+ * a CSV file with statistics of each frequency, and a PNG image of the chart. Used both by Network2DSim and by the headless SpectrumRunner,
+ * so that both produce the same layout.
+ */
+public class SpectrumExporter {
+    private String sourceFileName;
+    private SpectrumParameters parameters;
+
+    /**
+     * @param sourceFileName - name of the network file, written to the CSV file
+     * @param parameters - parameters of the run, written to the CSV file
+     */
+    public SpectrumExporter(String sourceFileName, SpectrumParameters parameters) {
+        this.sourceFileName = sourceFileName;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Creates chart of the spectrum with average and current series,
+     * with the same titles and labels as the chart shown by Network2DSim.
+     * @param objSeriesAverage - series of average energy
+     * @param objSeriesCurrent - series of energy of current pass
+     * @return JFreeChart
+     */
+    public static JFreeChart createChart(XYSeries objSeriesAverage, XYSeries objSeriesCurrent) {
+        XYSeriesCollection objCollection = new XYSeriesCollection();
+        objCollection.addSeries(objSeriesAverage);
+        objCollection.addSeries(objSeriesCurrent);
+
+        return ChartFactory.createXYLineChart(
+                "Spectra",
+                "Frequency",
+                "Energy average",
+                objCollection
+        );
+    }
+
+    /**
+     * Adds average energy of all passes at each frequency to a series that is shown on the chart.
+     * Averages are kept by the results, so nothing is calculated here.
+     * @param results - results of all passes
+     * @param series - series of average energy
+     */
+    public static void addAverageEnergy(SpectrumResults results, XYSeries series) {
+        double[] frequencies = results.getFrequencies();
+        for (int i=0; i<frequencies.length; i++) {
+            if (results.getCount(i) > 0) {
+                series.add(frequencies[i], results.getMean(i));
+            }
+        }
+    }
+
+    /**
+     * Exports all values to a CSV file and the chart to a PNG image in the destination folder.
+     * File names start with the current time stamp.
+     *
+     * @param results - all values generated from simulation, energies of all passes
+     * @param chart - chart that is saved as image
+     * @param filePath - destination folder
+     * @param timeElapsedInSeconds - duration of the run, written to the CSV file
+     * @return path of the CSV file
+     * @throws IOException if the image or the CSV file can not be written completely
+     */
+    public String exportToFile(SpectrumResults results, JFreeChart chart, File filePath, double timeElapsedInSeconds)
+            throws IOException {
+
+        String fileName = Network2DSim.getCurrentTimeStamp() + "-analysis-results";
+
+        String actualFilePath = filePath.getAbsolutePath() + "/" + fileName + ".csv";
+        String imageFilePath = filePath.getAbsolutePath() + "/" + fileName + "-avg.png";
+
+        File imageFile = new File(imageFilePath);
+
+        ChartUtilities.saveChartAsPNG(imageFile,chart,1400,800);
+
+        PrintWriter writer = new PrintWriter(actualFilePath, "UTF-8");
+        try {
+            double[] frequencies = results.getFrequencies();
+            int size = results.getFrequencyCount();
+            for (int i=0; i<results.getPassCount(); i++) {
+                if (i==0) {
+                    for (int j=0; j<size; j++) {
+                        writer.print(frequencies[j]);
+                        if (j<(size-1))
+                            writer.print(",");
+                    }
+                    writer.println();
+                }
+                for (int j=0; j<size; j++) {
+                    writer.print(results.getEnergy(i, j));
+                    if (j<(size-1))
+                        writer.print(",");
+                }
+
+                writer.println();
+            }
+            writer.println();
+            writer.println("-----,-----,-----,-----,-----,-----,-----,-----");
+            writer.println("Network file name: " + sourceFileName
+                    + ",Time multiplier: " + parameters.getTimeMultiplier()
+                    + ",Force Amplitude Set: " + parameters.getAmplitude()
+                    + ",Passes: " + results.getPassCount()
+                    + ",Maximum frequency: " + parameters.getFrequencyLimit()
+                    + ",Damping: " + parameters.getDamping()
+                    + ",Frequency step increment: " + parameters.getIncrementFrequency()
+                    + ",Step duration: " + parameters.getPassTime()
+                    + ",Time elapsed in seconds: " + timeElapsedInSeconds);
+        } finally {
+            writer.close();
+        }
+        checkWritten(writer, actualFilePath);
+        return actualFilePath;
+    }
+
+    /**
+     * Exports statistics of each frequency over the passes next to the CSV file of the spectrum,
+     * with the same name followed by -statistics: number of passes, mean energy, standard deviation,
+     * 95% confidence interval of the mean, minimum and maximum. Interval is empty with less than two passes.
+     * @param results - results of all passes
+     * @param csvFilePath - path of the CSV file returned by exportToFile
+     * @return path of the written file
+     * @throws IOException if the file can not be written completely
+     */
+    public String exportStatistics(SpectrumResults results, String csvFilePath) throws IOException {
+        String statisticsFilePath = csvFilePath.substring(0, csvFilePath.length() - ".csv".length())
+                + "-statistics.csv";
+        PrintWriter writer = new PrintWriter(statisticsFilePath, "UTF-8");
+        try {
+            writer.println("Frequency,Passes,Mean,Standard deviation,95% interval low,95% interval high,Min,Max");
+            double[] frequencies = results.getFrequencies();
+            for (int j=0; j<frequencies.length; j++) {
+                double mean = results.getMean(j);
+                double halfWidth = results.getConfidenceHalfWidth(j);
+                writer.print(frequencies[j] + "," + results.getCount(j) + "," + mean + ","
+                        + results.getStandardDeviation(j) + ",");
+                if (!Double.isNaN(halfWidth)) {
+                    writer.print((mean - halfWidth) + "," + (mean + halfWidth));
+                } else {
+                    writer.print(",");
+                }
+                writer.println("," + results.getMin(j) + "," + results.getMax(j));
+            }
+            writer.println();
+            writer.println("-----,-----,-----");
+            writer.println("Network file name: " + sourceFileName + ",Passes: " + results.getPassCount()
+                    + ",Confidence width: " + parameters.getConfidenceWidth());
+        } finally {
+            writer.close();
+        }
+        checkWritten(writer, statisticsFilePath);
+        return statisticsFilePath;
+    }
+
+    /**
+     * Exports natural frequencies of a modal analysis next to the CSV file of the spectrum,
+     * with the same name followed by -modes.
+     * @param naturalFrequencies - natural frequency of each mode, in ascending order
+     * @param csvFilePath - path of the CSV file returned by exportToFile
+     * @return path of the written file
+     * @throws IOException if the file can not be written completely
+     */
+    public String exportNaturalFrequencies(double[] naturalFrequencies, String csvFilePath) throws IOException {
+        String modesFilePath = csvFilePath.substring(0, csvFilePath.length() - ".csv".length()) + "-modes.csv";
+        PrintWriter writer = new PrintWriter(modesFilePath, "UTF-8");
+        try {
+            writer.println("Mode,Natural frequency");
+            for (int j=0; j<naturalFrequencies.length; j++) {
+                writer.println(j + "," + naturalFrequencies[j]);
+            }
+            writer.println();
+            writer.println("-----,-----");
+            writer.println("Network file name: " + sourceFileName + ",Modes: " + naturalFrequencies.length);
+        } finally {
+            writer.close();
+        }
+        checkWritten(writer, modesFilePath);
+        return modesFilePath;
+    }
+
+    /**
+     * PrintWriter keeps write errors, for example of a full disk, to itself.
+     * Checked once the writer is closed, so errors of the final flush are included.
+     * @param writer - closed writer
+     * @param filePath - path of the written file
+     * @throws IOException if any write failed
+     */
+    private static void checkWritten(PrintWriter writer, String filePath) throws IOException {
+        if (writer.checkError()) {
+            throw new IOException("File can not be written completely: " + filePath);
+        }
+    }
+}
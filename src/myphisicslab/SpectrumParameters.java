@@ -0,0 +1,347 @@
+package myphisicslab;
+
+import java.util.Arrays;
+
+/**
+ * SpectrumParameters Class
+ *
+ * Holds the parameters of one spectrum calculation, the same values that are
+ * entered in the control panel of Network2DSim. Default values are the defaults of the control panel.
+ */
+public class SpectrumParameters {
+    //-- Names of solvers that can be selected, the first one is the default
+    public static final String SOLVER_RUNGE_KUTTA = "rk4";
+    public static final String SOLVER_DORMAND_PRINCE = "dopri5";
+    public static final String SOLVER_VELOCITY_VERLET = "verlet";
+    public static final String[] SOLVERS = {SOLVER_RUNGE_KUTTA, SOLVER_DORMAND_PRINCE, SOLVER_VELOCITY_VERLET};
+
+    //-- Names of analysis methods, the first one is the default
+    public static final String ANALYSIS_SWEEP = "sweep";
+    public static final String ANALYSIS_MODAL = "modal";
+    public static final String ANALYSIS_HARMONIC = "harmonic";
+    public static final String[] ANALYSES = {ANALYSIS_SWEEP, ANALYSIS_MODAL, ANALYSIS_HARMONIC};
+
+    private double amplitude = 5.0;
+    private double frequencyLimit = 2.0;
+    private double incrementFrequency = 0.0125;
+    private int passLimit = 3;
+    private double damping = 20.0;
+    private double passTime = 10.0;
+    private double timeMultiplier = 1.0;
+    private String solver = SOLVER_RUNGE_KUTTA;
+    private String analysis = ANALYSIS_SWEEP;
+    private int modeLimit = 100;
+    private long seed = 1;
+    private double steadyStateTolerance = 0.0;
+    private double confidenceWidth = 0.0;
+    private boolean warmStart = false;
+
+    public SpectrumParameters() {
+    }
+
+    /**
+     * Returns amplitude of the driving force
+     * @return double
+     */
+    public double getAmplitude() {
+        return amplitude;
+    }
+
+    /**
+     * Sets amplitude of the driving force
+     * @param amplitude
+     */
+    public void setAmplitude(double amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    /**
+     * Returns maximum frequency of the sweep
+     * @return double
+     */
+    public double getFrequencyLimit() {
+        return frequencyLimit;
+    }
+
+    /**
+     * Sets maximum frequency of the sweep
+     * @param frequencyLimit
+     */
+    public void setFrequencyLimit(double frequencyLimit) {
+        this.frequencyLimit = frequencyLimit;
+    }
+
+    /**
+     * Returns frequency step of the sweep
+     * @return double
+     */
+    public double getIncrementFrequency() {
+        return incrementFrequency;
+    }
+
+    /**
+     * Sets frequency step of the sweep
+     * @param incrementFrequency
+     */
+    public void setIncrementFrequency(double incrementFrequency) {
+        this.incrementFrequency = incrementFrequency;
+    }
+
+    /**
+     * Returns number of passes that are averaged
+     * @return int
+     */
+    public int getPassLimit() {
+        return passLimit;
+    }
+
+    /**
+     * Sets number of passes that are averaged
+     * @param passLimit
+     */
+    public void setPassLimit(int passLimit) {
+        this.passLimit = passLimit;
+    }
+
+    /**
+     * Returns damping force coefficient
+     * @return double
+     */
+    public double getDamping() {
+        return damping;
+    }
+
+    /**
+     * Sets damping force coefficient
+     * @param damping
+     */
+    public void setDamping(double damping) {
+        this.damping = damping;
+    }
+
+    /**
+     * Returns duration of each frequency point in simulation time
+     * @return double
+     */
+    public double getPassTime() {
+        return passTime;
+    }
+
+    /**
+     * Sets duration of each frequency point in simulation time
+     * @param passTime
+     */
+    public void setPassTime(double passTime) {
+        this.passTime = passTime;
+    }
+
+    /**
+     * Returns time multiplier, step size of the solver is 0.01 * time multiplier
+     * @return double
+     */
+    public double getTimeMultiplier() {
+        return timeMultiplier;
+    }
+
+    /**
+     * Sets time multiplier
+     * @param timeMultiplier
+     */
+    public void setTimeMultiplier(double timeMultiplier) {
+        this.timeMultiplier = timeMultiplier;
+    }
+
+    /**
+     * Returns name of the solver, one of SOLVERS
+     * @return String
+     */
+    public String getSolver() {
+        return solver;
+    }
+
+    /**
+     * Sets name of the solver, one of SOLVERS
+     * @param solver
+     */
+    public void setSolver(String solver) {
+        this.solver = solver;
+    }
+
+    /**
+     * Returns name of the analysis method, one of ANALYSES
+     * @return String
+     */
+    public String getAnalysis() {
+        return analysis;
+    }
+
+    /**
+     * Sets name of the analysis method, one of ANALYSES.
+     * Sweep integrates every frequency point of every pass, modal predicts the spectrum
+     * from eigenmodes of the linearised network in a single pass, and harmonic solves the
+     * steady state of the linearised network at each frequency in a single pass.
+     * @param analysis
+     */
+    public void setAnalysis(String analysis) {
+        this.analysis = analysis;
+    }
+
+    /**
+     * Returns largest number of modes of a modal analysis of a large network
+     * @return int
+     */
+    public int getModeLimit() {
+        return modeLimit;
+    }
+
+    /**
+     * Sets largest number of modes of a modal analysis of a large network.
+     * Only the lowest modes up to the frequency limit are found, at most modeLimit of them.
+     * @param modeLimit
+     */
+    public void setModeLimit(int modeLimit) {
+        this.modeLimit = modeLimit;
+    }
+
+    /**
+     * Returns seed of the phases of the driving wave in passes after the first
+     * @return long
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets seed of the phases of the driving wave in passes after the first,
+     * the same seed gives the same passes.
+     * @param seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns tolerance of steady state detection, 0 if points always run for pass time
+     * @return double
+     */
+    public double getSteadyStateTolerance() {
+        return steadyStateTolerance;
+    }
+
+    /**
+     * Sets tolerance of steady state detection. A frequency point ends before pass time once
+     * the peak of summed edge energy changes by less than this fraction for a few periods.
+     * @param steadyStateTolerance - relative tolerance, 0 turns detection off
+     */
+    public void setSteadyStateTolerance(double steadyStateTolerance) {
+        this.steadyStateTolerance = steadyStateTolerance;
+    }
+
+    /**
+     * Returns largest width of the 95% confidence interval of mean energy relative to the mean,
+     * below which no more passes are run
+     * @return double
+     */
+    public double getConfidenceWidth() {
+        return confidenceWidth;
+    }
+
+    /**
+     * Sets largest width of the 95% confidence interval of mean energy relative to the mean.
+     * Once every frequency has a narrower interval no more passes are run, pass limit is the maximum.
+     * @param confidenceWidth - relative width, 0 runs all passes
+     */
+    public void setConfidenceWidth(double confidenceWidth) {
+        this.confidenceWidth = confidenceWidth;
+    }
+
+    /**
+     * Returns true if frequency points of a pass continue from the state of the previous point
+     * @return boolean
+     */
+    public boolean isWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Sets if frequency points of a pass continue from the state of the previous point,
+     * with the phase of the driving wave kept continuous, instead of starting from rest.
+     * @param warmStart
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Returns all parameters as text, equal parameters give equal text
+     * @return String
+     */
+    @Override
+    public String toString() {
+        return "amplitude=" + amplitude + ",frequencyLimit=" + frequencyLimit
+                + ",incrementFrequency=" + incrementFrequency + ",passLimit=" + passLimit
+                + ",damping=" + damping + ",passTime=" + passTime + ",timeMultiplier=" + timeMultiplier
+                + ",solver=" + solver + ",analysis=" + analysis + ",modeLimit=" + modeLimit + ",seed=" + seed
+                + ",steadyStateTolerance=" + steadyStateTolerance + ",warmStart=" + warmStart
+                + ",confidenceWidth=" + confidenceWidth;
+    }
+
+    /**
+     * Creates solver with given name for the equation.
+     * @param solver - one of SOLVERS
+     * @param ode - equation that is solved
+     * @return DiffEqSolver
+     */
+    public static DiffEqSolver createSolver(String solver, DiffEq ode) {
+        if (SOLVER_DORMAND_PRINCE.equals(solver)) {
+            return new DormandPrince(ode);
+        }
+        if (SOLVER_VELOCITY_VERLET.equals(solver)) {
+            return new VelocityVerlet(ode);
+        }
+        if (SOLVER_RUNGE_KUTTA.equals(solver)) {
+            return new RungeKutta(ode);
+        }
+        throw new IllegalArgumentException("Unknown solver " + solver);
+    }
+
+    /**
+     * Returns step size of the solver
+     * @return double
+     */
+    public double getStepSize() {
+        return 0.01 * timeMultiplier;
+    }
+
+    /**
+     * Checks parameters with the same rules as Network2DSim.validateSimulationVariables.
+     * @return message describing the first invalid value, or null if all values are valid
+     */
+    public String validate() {
+        if (timeMultiplier < 1.0 || timeMultiplier > 16.0)
+            return "Time multiplier is invalid. Has to be in range between 1 and 16.";
+        if (amplitude < 0)
+            return "Do set only positive amplitude.";
+        if (incrementFrequency <= 0)
+            return "Set frequency step value. Must be positive.";
+        if (passLimit < 1)
+            return "Pass count must be whole number and at least 1.";
+        if (frequencyLimit < incrementFrequency || frequencyLimit <= 0)
+            return "Maximum frequency value must be higher than zero.";
+        if (passTime <= 0)
+            return "Pass time must be higher than 0.";
+        if (damping < 0)
+            return "Damping value must be higher than 0.";
+        if (!Arrays.asList(SOLVERS).contains(solver))
+            return "Solver must be one of " + Arrays.toString(SOLVERS) + ".";
+        if (!Arrays.asList(ANALYSES).contains(analysis))
+            return "Analysis must be one of " + Arrays.toString(ANALYSES) + ".";
+        if (steadyStateTolerance < 0 || steadyStateTolerance >= 1)
+            return "Steady state tolerance must be between 0 and 1, 0 turns it off.";
+        if (confidenceWidth < 0)
+            return "Confidence width must not be negative, 0 runs all passes.";
+        if (modeLimit < 1)
+            return "Mode count must be whole number and at least 1.";
+        return null;
+    }
+}
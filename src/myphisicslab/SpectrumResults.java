@@ -0,0 +1,211 @@
+package myphisicslab;
+
+import java.util.Arrays;
+
+/**
+ * SpectrumResults Class
+ *
+ * Energies of all passes of a spectrum, kept as a dense array of pass by frequency index,
+ * together with statistics of each frequency over the passes: mean, variance, minimum, maximum
+ * and the 95% confidence interval of the mean.
+ * Statistics are updated online as each energy is added (Welford's method), so averages are ready
+ * at any time without another pass over the energies.
+ *
+ * A point that is not known yet, for example of a cancelled pass, is NaN and is not counted.
+ * Energies are added by several threads, so all methods are synchronized.
+ * Charts are filled from it for display only, by SpectrumExporter.
+ */
+public class SpectrumResults {
+    //-- Two sided 95% quantiles of Student's t distribution for 1 to 30 degrees of freedom
+    private static final double[] STUDENT_T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+    private static final double NORMAL_95 = 1.959964;
+
+    private double[] frequencies;
+    private double[][] energies;
+    private int passCount = 0;
+
+    private int[] counts;
+    private double[] mean;
+    private double[] sumOfSquares; //-- sum of squared differences from the mean
+    private double[] min;
+    private double[] max;
+
+    /**
+     * @param frequencies - frequencies of every pass, is not copied
+     * @param expectedPasses - number of passes to allocate space for, more can be added
+     */
+    public SpectrumResults(double[] frequencies, int expectedPasses) {
+        this.frequencies = frequencies;
+        int n = frequencies.length;
+        energies = new double[Math.max(1, expectedPasses)][];
+        counts = new int[n];
+        mean = new double[n];
+        sumOfSquares = new double[n];
+        min = new double[n];
+        max = new double[n];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Adds energy of one point and updates statistics of its frequency.
+     * Each point is added once, NaN is stored but not counted.
+     * @param pass - index of the pass, from 0
+     * @param index - index of the frequency
+     * @param energy - average maximum energy of the point
+     */
+    public synchronized void addEnergy(int pass, int index, double energy) {
+        if (pass >= energies.length) {
+            energies = Arrays.copyOf(energies, Math.max(pass + 1, 2 * energies.length));
+        }
+        while (passCount <= pass) {
+            energies[passCount] = new double[frequencies.length];
+            Arrays.fill(energies[passCount], Double.NaN);
+            passCount++;
+        }
+        energies[pass][index] = energy;
+        if (Double.isNaN(energy)) {
+            return;
+        }
+
+        int count = ++counts[index];
+        double delta = energy - mean[index];
+        mean[index] += delta / count;
+        sumOfSquares[index] += delta * (energy - mean[index]);
+        min[index] = Math.min(min[index], energy);
+        max[index] = Math.max(max[index], energy);
+    }
+
+    /**
+     * Adds a complete pass after the passes that are already added
+     * @param passEnergies - energy for each frequency
+     * @return index of the pass
+     */
+    public synchronized int addPass(double[] passEnergies) {
+        int pass = passCount;
+        for (int i=0; i<frequencies.length; i++) {
+            addEnergy(pass, i, passEnergies[i]);
+        }
+        return pass;
+    }
+
+    /**
+     * Returns frequencies of every pass
+     * @return array of double
+     */
+    public double[] getFrequencies() {
+        return frequencies;
+    }
+
+    /**
+     * Returns number of frequencies of a pass
+     * @return int
+     */
+    public int getFrequencyCount() {
+        return frequencies.length;
+    }
+
+    /**
+     * Returns number of passes that have at least one point
+     * @return int
+     */
+    public synchronized int getPassCount() {
+        return passCount;
+    }
+
+    /**
+     * Returns energy of a point, NaN if it is not known
+     * @param pass - index of the pass
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getEnergy(int pass, int index) {
+        return energies[pass][index];
+    }
+
+    /**
+     * Returns number of passes with known energy at a frequency
+     * @param index - index of the frequency
+     * @return int
+     */
+    public synchronized int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Returns mean energy of a frequency over the passes, NaN if there is none
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getMean(int index) {
+        return (counts[index] > 0) ? mean[index] : Double.NaN;
+    }
+
+    /**
+     * Returns sample variance of energy of a frequency, 0 with less than two passes
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getVariance(int index) {
+        return (counts[index] > 1) ? sumOfSquares[index] / (counts[index] - 1) : 0;
+    }
+
+    /**
+     * Returns sample standard deviation of energy of a frequency, 0 with less than two passes
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getStandardDeviation(int index) {
+        return Math.sqrt(getVariance(index));
+    }
+
+    /**
+     * Returns half width of the 95% confidence interval of the mean energy of a frequency,
+     * NaN with less than two passes. The interval is mean - half width to mean + half width.
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getConfidenceHalfWidth(int index) {
+        int count = counts[index];
+        if (count < 2) {
+            return Double.NaN;
+        }
+        return getStudentT95(count - 1) * getStandardDeviation(index) / Math.sqrt(count);
+    }
+
+    /**
+     * Returns two sided 95% quantile of Student's t distribution
+     * @param degreesOfFreedom - at least 1
+     * @return double
+     */
+    public static double getStudentT95(int degreesOfFreedom) {
+        if (degreesOfFreedom <= STUDENT_T_95.length) {
+            return STUDENT_T_95[degreesOfFreedom - 1];
+        }
+        //-- Cornish-Fisher expansion around the normal quantile, exact to 3 decimals above 30
+        double z = NORMAL_95;
+        double n = degreesOfFreedom;
+        return z + (z*z*z + z) / (4*n) + (5*z*z*z*z*z + 16*z*z*z + 3*z) / (96*n*n);
+    }
+
+    /**
+     * Returns lowest energy of a frequency, NaN if there is none
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getMin(int index) {
+        return (counts[index] > 0) ? min[index] : Double.NaN;
+    }
+
+    /**
+     * Returns highest energy of a frequency, NaN if there is none
+     * @param index - index of the frequency
+     * @return double
+     */
+    public synchronized double getMax(int index) {
+        return (counts[index] > 0) ? max[index] : Double.NaN;
+    }
+}
@@ -0,0 +1,461 @@
+package myphisicslab;
+
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.xy.XYSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * SpectrumRunner Class
+ *
+ * Command line entry point that calculates the spectrum of a Pajek network file without any
+ * windows, so it can run on machines without a display (-Djava.awt.headless=true).
+ * The network is relaxed from the circular layout, every pass is swept with FrequencySweep
+ * and results are written by SpectrumExporter in the same CSV and PNG layout as Network2DSim.
+ * With -analysis modal the spectrum is predicted by ModalAnalysis in a single pass instead,
+ * and natural frequencies are written to a second CSV file. Networks larger than
+ * ModalAnalysis.DENSE_NODE_LIMIT nodes use only the lowest modes, at most -modes of them.
+ * The prediction holds only in the small amplitude limit, a warning is printed when the predicted
+ * stretch of an edge is not small compared with its rest length.
+ * With -analysis harmonic the steady state at each frequency is solved by HarmonicResponse,
+ * also in a single pass and with the same small amplitude limit.
+ * Relaxed positions are kept in a RelaxedLayoutCache folder, a network with the same content
+ * is not relaxed again. -cacheSize 0 turns the cache off.
+ * Points of a sweep are streamed to a points file in the output folder by SpectrumCheckpointWriter,
+ * with a checkpoint every -checkpoint seconds. Running the same sweep into the same folder again
+ * continues from the last checkpoint, and both files are deleted once results are exported.
+ * -checkpoint 0 turns streaming off.
+ * With -confidenceWidth passes run in batches until the 95% confidence interval of the mean energy
+ * is narrower than that fraction of the mean at every frequency, -passes is then the largest number
+ * of passes. Statistics of each frequency are exported to a -statistics CSV file.
+ *
+ * Usage:
+ * java -Djava.awt.headless=true -cp ... myphisicslab.SpectrumRunner network.net
+ *      [-amplitude 5] [-frequencyMax 2.0] [-frequencyStep 0.0125] [-passes 3]
+ *      [-damping 20.0] [-passTime 10.0] [-timeMultiplier 1.0] [-solver rk4|dopri5|verlet]
+ *      [-analysis sweep|modal|harmonic] [-modes 100] [-steadyTolerance 0] [-warmStart false]
+ *      [-confidenceWidth 0] [-seed 1] [-cache folder] [-cacheSize 256] [-checkpoint 30] [-output folder]
+ */
+public class SpectrumRunner {
+    private SpectrumParameters parameters;
+    private ForkJoinPool pool;
+    private double[] naturalFrequencies = null;
+    private RelaxedLayoutCache layoutCache = null;
+    private long checkpointMillis = SpectrumCheckpointWriter.DEFAULT_CHECKPOINT_MILLIS;
+    private File pointsFile = null;
+    private SpectrumCheckpointWriter checkpointWriter = null;
+
+    /**
+     * @param parameters - parameters of the spectrum
+     * @param pool - pool that runs frequency points
+     */
+    public SpectrumRunner(SpectrumParameters parameters, ForkJoinPool pool) {
+        this.parameters = parameters;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        SpectrumParameters parameters = new SpectrumParameters();
+        File networkFile = null;
+        File destination = new File(".");
+        File cacheDirectory = RelaxedLayoutCache.getDefaultDirectory();
+        long cacheSize = RelaxedLayoutCache.DEFAULT_SIZE_LIMIT;
+        long checkpointMillis = SpectrumCheckpointWriter.DEFAULT_CHECKPOINT_MILLIS;
+        try {
+            for (int i=0; i<args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("-")) {
+                    networkFile = new File(arg);
+                } else if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                } else if (arg.equals("-cache")) {
+                    cacheDirectory = new File(args[++i]);
+                } else if (arg.equals("-cacheSize")) {
+                    cacheSize = Long.parseLong(args[++i]) * 1024 * 1024;
+                } else if (arg.equals("-checkpoint")) {
+                    checkpointMillis = (long)(Double.parseDouble(args[++i]) * 1000);
+                } else if (arg.equals("-output")) {
+                    destination = new File(args[++i]);
+                } else {
+                    setOption(parameters, arg, args[++i]);
+                }
+            }
+            if (networkFile == null) {
+                throw new IllegalArgumentException("Network file is not set.");
+            }
+            String error = parameters.validate();
+            if (error != null) {
+                throw new IllegalArgumentException(error);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            SpectrumRunner runner = new SpectrumRunner(parameters, pool);
+            if (cacheSize > 0) {
+                runner.setLayoutCache(new RelaxedLayoutCache(cacheDirectory, cacheSize));
+            }
+            runner.setCheckpointMillis(checkpointMillis);
+            String resultPath = runner.run(networkFile, destination);
+            System.out.println("Results saved to: " + resultPath);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sets one spectrum parameter from a command line option, shared with BatchRunner.
+     * @param parameters - parameters to change
+     * @param option - name of the option, for example -damping
+     * @param value - value of the option
+     * @throws IllegalArgumentException if the option is unknown or the value is not a number
+     */
+    static void setOption(SpectrumParameters parameters, String option, String value) {
+        if (option.equals("-amplitude")) {
+            parameters.setAmplitude(Double.parseDouble(value));
+        } else if (option.equals("-frequencyMax")) {
+            parameters.setFrequencyLimit(Double.parseDouble(value));
+        } else if (option.equals("-frequencyStep")) {
+            parameters.setIncrementFrequency(Double.parseDouble(value));
+        } else if (option.equals("-passes")) {
+            parameters.setPassLimit(Integer.parseInt(value));
+        } else if (option.equals("-damping")) {
+            parameters.setDamping(Double.parseDouble(value));
+        } else if (option.equals("-passTime")) {
+            parameters.setPassTime(Double.parseDouble(value));
+        } else if (option.equals("-timeMultiplier")) {
+            parameters.setTimeMultiplier(Double.parseDouble(value));
+        } else if (option.equals("-solver")) {
+            parameters.setSolver(value);
+        } else if (option.equals("-analysis")) {
+            parameters.setAnalysis(value);
+        } else if (option.equals("-modes")) {
+            parameters.setModeLimit(Integer.parseInt(value));
+        } else if (option.equals("-steadyTolerance")) {
+            parameters.setSteadyStateTolerance(Double.parseDouble(value));
+        } else if (option.equals("-warmStart")) {
+            parameters.setWarmStart(Boolean.parseBoolean(value));
+        } else if (option.equals("-confidenceWidth")) {
+            parameters.setConfidenceWidth(Double.parseDouble(value));
+        } else if (option.equals("-seed")) {
+            parameters.setSeed(Long.parseLong(value));
+        } else {
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: SpectrumRunner network.net [-amplitude 5] [-frequencyMax 2.0]"
+                + " [-frequencyStep 0.0125] [-passes 3] [-damping 20.0] [-passTime 10.0]"
+                + " [-timeMultiplier 1.0] [-solver rk4|dopri5|verlet] [-analysis sweep|modal|harmonic]"
+                + " [-modes 100] [-steadyTolerance 0] [-warmStart false] [-confidenceWidth 0]"
+                + " [-seed 1] [-cache folder] [-cacheSize 256] [-checkpoint 30] [-output folder]");
+        System.err.println("-analysis modal and harmonic linearise the network, they agree with sweep only for small amplitudes.");
+    }
+
+    /**
+     * Prints a warning when a linearised analysis predicts a stretch amplitude that is not small
+     * compared with the rest length, where its spectrum no longer matches the simulated one.
+     * @param relativeStretch - largest stretch amplitude relative to the rest length
+     */
+    private static void checkLinearLimit(double relativeStretch) {
+        if (relativeStretch > ModalAnalysis.LINEAR_STRETCH_LIMIT) {
+            System.err.println(String.format("Warning: predicted stretch amplitude reaches %.0f%% of the rest length,"
+                    + " the linearised spectrum is accurate only for small amplitudes."
+                    + " Use a smaller -amplitude or -analysis sweep.", 100 * relativeStretch));
+        }
+    }
+
+    /**
+     * Loads the network file, calculates its spectrum and exports results to destination folder.
+     * @param networkFile - Pajek format data file
+     * @param destination - folder for CSV and PNG files
+     * @return path of the CSV file
+     * @throws IOException if the network can not be loaded, destination is not a folder
+     *                     or results can not be exported
+     */
+    public String run(File networkFile, File destination) throws IOException {
+        long startTime = System.currentTimeMillis();
+        if (!destination.isDirectory()) {
+            throw new IOException("Destination folder does not exist: " + destination);
+        }
+        return run(networkFile, loadRelaxedNetwork(networkFile), destination, startTime);
+    }
+
+    /**
+     * Calculates spectrum of a network returned by loadRelaxedNetwork and exports results
+     * to destination folder.
+     * @param networkFile - Pajek format data file the network was loaded from
+     * @param network - relaxed network, not shared with other runs
+     * @param destination - folder for CSV and PNG files
+     * @return path of the CSV file
+     * @throws IOException if destination is not a folder or results can not be exported
+     */
+    public String run(File networkFile, Network network, File destination) throws IOException {
+        long startTime = System.currentTimeMillis();
+        if (!destination.isDirectory()) {
+            throw new IOException("Destination folder does not exist: " + destination);
+        }
+        return run(networkFile, network, destination, startTime);
+    }
+
+    private String run(File networkFile, Network network, File destination, long startTime) throws IOException {
+        pointsFile = (checkpointMillis > 0) ? getPointsFile(networkFile, destination) : null;
+        SpectrumResults results = calculateSpectrum(network);
+
+        XYSeries objSeriesAverage = new XYSeries("Total Average Energy");
+        XYSeries objSeriesCurrent = new XYSeries("Current Max Energy");
+        SpectrumExporter.addAverageEnergy(results, objSeriesAverage);
+        JFreeChart chart = SpectrumExporter.createChart(objSeriesAverage, objSeriesCurrent);
+
+        double timeElapsedInSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        SpectrumExporter exporter = new SpectrumExporter(networkFile.getName(), parameters);
+        String resultPath = exporter.exportToFile(results, chart, destination, timeElapsedInSeconds);
+        if (naturalFrequencies != null) {
+            exporter.exportNaturalFrequencies(naturalFrequencies, resultPath);
+        }
+        exporter.exportStatistics(results, resultPath);
+        //-- Points are kept until every export is written, an export that fails can be run again
+        if (checkpointWriter != null) {
+            checkpointWriter.delete();
+            checkpointWriter = null;
+        }
+        return resultPath;
+    }
+
+    /**
+     * Loads the network file and relaxes the network, relaxed positions are taken from
+     * and stored in the layout cache if there is one.
+     * @param networkFile - Pajek format data file
+     * @return relaxed network
+     * @throws IOException if the network can not be loaded
+     */
+    public Network loadRelaxedNetwork(File networkFile) throws IOException {
+        Network network = loadNetwork(networkFile);
+        relax(network);
+        return network;
+    }
+
+    /**
+     * Loads the network file without relaxing it
+     * @param networkFile - Pajek format data file
+     * @return network that is not relaxed
+     * @throws IOException if the network can not be loaded
+     */
+    public Network loadNetwork(File networkFile) throws IOException {
+        Network network = new PajekFileLoader().loadNetwork(networkFile);
+        if (network == null || !PajekFileLoader.isValid(network)) {
+            throw new IOException("The import file is invalid: " + networkFile);
+        }
+        return network;
+    }
+
+    /**
+     * Sets cache of relaxed positions, null to relax every network that is not relaxed yet
+     * @param layoutCache
+     */
+    public void setLayoutCache(RelaxedLayoutCache layoutCache) {
+        this.layoutCache = layoutCache;
+    }
+
+    /**
+     * Sets time between checkpoints of a sweep, 0 to keep points in memory only
+     * @param checkpointMillis - time in milliseconds
+     */
+    public void setCheckpointMillis(long checkpointMillis) {
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    /**
+     * Returns points file of a sweep in the destination folder, its checkpoint has the same
+     * name followed by .checkpoint
+     * @param networkFile - Pajek format data file
+     * @param destination - folder for CSV and PNG files
+     * @return File
+     */
+    public static File getPointsFile(File networkFile, File destination) {
+        return new File(destination, networkFile.getName() + "-points.csv");
+    }
+
+    /**
+     * Returns natural frequencies found by the last modal analysis, or null after a sweep
+     * @return array of double
+     */
+    public double[] getNaturalFrequencies() {
+        return naturalFrequencies;
+    }
+
+    /**
+     * Returns key of the network relaxed with these parameters in the layout cache
+     * @param network - loaded network
+     * @return String
+     */
+    public String getLayoutKey(Network network) {
+        //-- FrequencySweep.relax always steps with Runge-Kutta
+        return RelaxedLayoutCache.getKey(network, RelaxedLayoutCache.getRelaxation(RelaxedLayoutCache.METHOD_SWEEP,
+                parameters.getPassTime() - 1, parameters.getStepSize(), SpectrumParameters.SOLVER_RUNGE_KUTTA));
+    }
+
+    /**
+     * Stores relaxed positions as initial positions of the nodes and marks the network as relaxed.
+     * Positions are taken from the layout cache if they are there, otherwise they are worked out
+     * and stored in the cache.
+     * @param network - network that is not relaxed
+     */
+    public void relax(Network network) {
+        ArrayList<Node> nodeList = network.getNodeList();
+        String layoutKey = null;
+        if (layoutCache != null) {
+            layoutKey = getLayoutKey(network);
+            if (layoutCache.load(network, layoutKey)) {
+                return;
+            }
+        }
+        //-- Same as Network2DSim, positions are recorded after pass time - 1 of relaxation
+        NetworkModel model = new NetworkModel(nodeList, network.getEdgeList());
+        double[] relaxedVars = FrequencySweep.relax(model, FrequencySweep.getCircleLayout(model.getNodeCount()),
+                parameters.getPassTime() - 1, parameters.getStepSize());
+        for (int i=0; i<nodeList.size(); i++) {
+            nodeList.get(i).setInitPosX(relaxedVars[4*i]);
+            nodeList.get(i).setInitPosY(relaxedVars[1 + 4*i]);
+        }
+        network.setRelaxed(true);
+        if (layoutCache != null) {
+            layoutCache.store(network, layoutKey);
+        }
+    }
+
+    /**
+     * Relaxes the network and sweeps all passes, or with a confidence width only as many passes
+     * as AdaptivePassController needs.
+     * A network that is already relaxed, for example found in the layout cache,
+     * starts from its initial positions. Otherwise relaxed positions are stored as initial
+     * positions of its nodes, and in the layout cache.
+     * When called by run, points of a sweep are streamed to the points file and a sweep that
+     * stopped before continues from its last checkpoint.
+     * @param network - loaded network
+     * @return energies of all passes
+     * @throws IOException if points can not be written
+     */
+    public SpectrumResults calculateSpectrum(Network network) throws IOException {
+        NetworkModel model = new NetworkModel(network.getNodeList(), network.getEdgeList());
+        double stepSize = parameters.getStepSize();
+
+        if (!network.isRelaxed()) {
+            relax(network);
+        }
+        //-- Relaxed positions with zero velocity
+        ArrayList<Node> nodeList = network.getNodeList();
+        double[] initialVars = new double[4 * nodeList.size()];
+        for (int i=0; i<nodeList.size(); i++) {
+            initialVars[4*i] = nodeList.get(i).getInitPosX();
+            initialVars[1 + 4*i] = nodeList.get(i).getInitPosY();
+        }
+
+        double[] frequencies = FrequencySweep.getFrequencies(parameters.getFrequencyLimit(),
+                parameters.getIncrementFrequency());
+        double nodeOffset = network.getNodeList().get(0).m_Width/2;
+
+        naturalFrequencies = null;
+        if (SpectrumParameters.ANALYSIS_MODAL.equals(parameters.getAnalysis())) {
+            //-- Linearised prediction is the same for every pass, so there is a single pass
+            ModalAnalysis modalAnalysis = new ModalAnalysis(model, initialVars);
+            if (model.getNodeCount() <= ModalAnalysis.DENSE_NODE_LIMIT) {
+                modalAnalysis.solve();
+            } else {
+                modalAnalysis.solveLowest(parameters.getModeLimit(), parameters.getFrequencyLimit());
+            }
+            naturalFrequencies = modalAnalysis.getNaturalFrequencies();
+            double[] energies = modalAnalysis.getEnergySpectrum(frequencies, parameters.getAmplitude(),
+                    parameters.getDamping(), nodeOffset);
+            checkLinearLimit(modalAnalysis.getLargestRelativeStretch());
+            SpectrumResults results = new SpectrumResults(frequencies, 1);
+            results.addPass(energies);
+            return results;
+        }
+        if (SpectrumParameters.ANALYSIS_HARMONIC.equals(parameters.getAnalysis())) {
+            HarmonicResponse harmonicResponse = new HarmonicResponse(model, initialVars, pool);
+            harmonicResponse.setAmplitude(parameters.getAmplitude());
+            harmonicResponse.setDamping(parameters.getDamping());
+            harmonicResponse.setNodeOffset(nodeOffset);
+            SpectrumResults results = new SpectrumResults(frequencies, 1);
+            results.addPass(harmonicResponse.run(frequencies));
+            checkLinearLimit(harmonicResponse.getLargestRelativeStretch());
+            return results;
+        }
+
+        FrequencySweep sweep = new FrequencySweep(model, initialVars, pool);
+        sweep.setAmplitude(parameters.getAmplitude());
+        sweep.setDamping(parameters.getDamping());
+        sweep.setPassTime(parameters.getPassTime());
+        sweep.setStepSize(stepSize);
+        sweep.setSolver(parameters.getSolver());
+        sweep.setNodeOffset(nodeOffset);
+        sweep.setSteadyStateTolerance(parameters.getSteadyStateTolerance());
+        sweep.setWarmStart(parameters.isWarmStart());
+
+        //-- Passes run concurrently, each is added to the statistics as soon as it is finished
+        //-- and kept in pass order, whatever order they finish in
+        final int passes = parameters.getPassLimit();
+        final SpectrumResults results = new SpectrumResults(frequencies, passes);
+        FrequencySweep.PassListener passListener = new FrequencySweep.PassListener() {
+            @Override
+            public void passFinished(int pass, double[] energies) {
+                for (int i=0; i<energies.length; i++) {
+                    results.addEnergy(pass, i, energies[i]);
+                }
+            }
+        };
+        AdaptivePassController controller = new AdaptivePassController(parameters.getConfidenceWidth(), passes);
+        if (pointsFile == null) {
+            int done = 0;
+            while (!controller.isComplete(results, done)) {
+                int count = controller.getNextBatch(done, pool.getParallelism());
+                sweep.runPasses(frequencies, done, count, parameters.getSeed(), passListener);
+                done += count;
+            }
+        } else {
+            //-- Network content and all parameters must match to resume
+            String description = RelaxedLayoutCache.getKey(network) + "," + parameters;
+            checkpointWriter = new SpectrumCheckpointWriter(pointsFile,
+                    new File(pointsFile.getPath() + ".checkpoint"), description, frequencies, passes);
+            checkpointWriter.setCheckpointMillis(checkpointMillis);
+            if (checkpointWriter.getResumedPoints() > 0) {
+                System.out.println("Resumed " + checkpointWriter.getResumedPoints() + " points from " + pointsFile);
+            }
+            sweep.setPointListener(checkpointWriter);
+            try {
+                int done = 0;
+                while (!controller.isComplete(results, done)) {
+                    int count = controller.getNextBatch(done, pool.getParallelism());
+                    sweep.resumePasses(frequencies,
+                            Arrays.copyOfRange(checkpointWriter.getEnergies(), done, done + count),
+                            Arrays.copyOfRange(checkpointWriter.getStates(), done, done + count),
+                            done, parameters.getSeed(), passListener);
+                    done += count;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                checkpointWriter.close();
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,84 @@
+package myphisicslab;
+
+/**
+ * SteadyStateDetector Class
+ *
+ * Detects that a driven frequency point has settled, so that it can end before pass time.
+ * Summed energy of all edges is fed after each step. Its peak is recorded for every period
+ * of the driving force, and the point is steady when each of the last few periods changed
+ * the peak by less than the tolerance, relative to the peak.
+ *
+ * A point without period (frequency 0) is never steady and runs for the full pass time.
+ * Updates with a time that is not later than the previous update are ignored, so the detector
+ * can be fed from every evaluation of a solver step.
+ */
+public class SteadyStateDetector {
+    //-- Number of consecutive periods that must agree
+    public static final int DEFAULT_PERIODS = 3;
+
+    private double tolerance;
+    private int periods;
+
+    private double period;
+    private double periodEnd;
+    private double lastTime;
+    private double peak;
+    private double previousPeak;
+    private int settledPeriods;
+
+    /**
+     * @param tolerance - largest relative change of the peak between periods
+     * @param periods - number of consecutive periods that must agree
+     */
+    public SteadyStateDetector(double tolerance, int periods) {
+        this.tolerance = tolerance;
+        this.periods = periods;
+        reset(0, 0);
+    }
+
+    /**
+     * Starts detection of a new frequency point.
+     * @param frequency - frequency of the driving force
+     * @param startTime - time when the point starts
+     */
+    public void reset(double frequency, double startTime) {
+        period = (frequency > 0) ? 1 / frequency : 0;
+        periodEnd = startTime + period;
+        lastTime = startTime;
+        peak = 0;
+        previousPeak = -1;
+        settledPeriods = 0;
+    }
+
+    /**
+     * Records summed energy of edges at given time.
+     * @param time - time of the state
+     * @param energy - summed energy of all edges
+     * @return true if the point is steady
+     */
+    public boolean update(double time, double energy) {
+        if (period == 0 || time <= lastTime) {
+            return false;
+        }
+        lastTime = time;
+        if (energy > peak) {
+            peak = energy;
+        }
+        if (time < periodEnd) {
+            return false;
+        }
+
+        //-- Period is complete, its peak is compared with the peak of the previous one
+        if (previousPeak >= 0 && Math.abs(peak - previousPeak) <= tolerance * Math.max(peak, previousPeak)) {
+            settledPeriods++;
+        } else {
+            settledPeriods = 0;
+        }
+        previousPeak = peak;
+        peak = 0;
+        while (periodEnd <= time) {
+            periodEnd += period;
+        }
+        return settledPeriods >= periods;
+    }
+}
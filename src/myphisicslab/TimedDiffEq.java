@@ -0,0 +1,16 @@
+package myphisicslab;
+
+/**
+ * Differential equation whose rates of change depend on time, for example through a driving force.
+ * Solvers that know this interface pass the time of each stage to evaluate, so the equation
+ * does not need to read a clock while it is evaluated.
+ */
+public interface TimedDiffEq extends DiffEq {
+  /* returns time at the beginning of the next step of the solver
+   */
+  public double getTime();
+
+  /* same as evaluate(x, change), with the time of the stage that is evaluated.
+   */
+  public void evaluate(double[] x, double[] change, double time);
+}
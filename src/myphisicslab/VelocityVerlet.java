@@ -0,0 +1,110 @@
+package myphisicslab;
+
+import java.util.Arrays;
+
+/**
+ * VelocityVerlet Class
+ *
+ * Velocity Verlet (leapfrog) solver for networks of masses, with variables laid out as
+ * x, y, vx, vy for each mass. Each step is a half kick of velocities, a drift of positions
+ * and another half kick, which needs a single evaluation of the equation, at the new positions.
+ * Without damping the method is symplectic, so energy of a spring network does not drift
+ * over long runs.
+ *
+ * If the equation is a DampedDiffEq, the damping term of the second half kick is treated
+ * implicitly: acceleration without damping is a + c*v, and the new velocity solves
+ * v' = v_half + h/2 * (a_undamped - c*v'), which stays stable for strong damping.
+ * Driving force is whatever the equation evaluates at the new positions.
+ *
+ * Acceleration at the end of a step is kept for the first half kick of the next step.
+ * It is evaluated again only if the variables were changed between the steps, for example
+ * when the simulation moves the nodes back to their initial positions.
+ */
+public class VelocityVerlet implements DiffEqSolver {
+  private DiffEq ode;
+  private TimedDiffEq timedOde;  // same as ode if the equation depends on time, otherwise null
+  private double[] start, inp, change, undamped, last;
+  private boolean undampedValid = false;
+  private long evaluationCount = 0;
+
+  public VelocityVerlet(DiffEq ode) {
+    this.ode = ode;
+    this.timedOde = (ode instanceof TimedDiffEq) ? (TimedDiffEq)ode : null;
+  }
+
+  /**
+   * Returns number of evaluations of the equation so far
+   * @return long
+   */
+  public long getEvaluationCount() {
+    return evaluationCount;
+  }
+
+  public void step(double stepSize) {
+    double[] vars = ode.getVars();
+    boolean[] calc = ode.getCalc();
+    int N = vars.length;
+    if ((inp == null) || (inp.length != N)) {
+      start = new double[N];
+      inp = new double[N];
+      change = new double[N];
+      undamped = new double[N];
+      last = new double[N];
+      undampedValid = false;
+    }
+    double h = stepSize;
+    double t = (timedOde != null) ? timedOde.getTime() : 0;
+    System.arraycopy(vars, 0, start, 0, N);
+
+    //-- Acceleration at the beginning of the step, reused from the last step if nothing has moved nodes
+    if (!undampedValid || !Arrays.equals(vars, last)) {
+      evaluate(vars, change, t);
+      for (int i=2; i<N; i+=4) {
+        undamped[i] = change[i] + getDampingRate(i) * vars[i];
+        undamped[i+1] = change[i+1] + getDampingRate(i+1) * vars[i+1];
+      }
+    }
+
+    //-- Half kick and drift
+    for (int p=0; p+3<N; p+=4) {
+      for (int d=0; d<2; d++) {
+        int x = p + d;
+        int v = x + 2;
+        double a = undamped[v] - getDampingRate(v) * vars[v];
+        double halfVelocity = calc[v] ? vars[v] + a * h/2 : vars[v];
+        inp[v] = halfVelocity;
+        inp[x] = calc[x] ? vars[x] + halfVelocity * h : vars[x];
+      }
+    }
+
+    //-- Second half kick, with acceleration at the new positions
+    evaluate(inp, change, t + h);
+    //-- As RungeKutta, the change over the step is added, in case the equation moved the nodes meanwhile
+    boolean moved = !Arrays.equals(vars, start);
+    for (int p=0; p+3<N; p+=4) {
+      for (int d=0; d<2; d++) {
+        int x = p + d;
+        int v = x + 2;
+        double c = getDampingRate(v);
+        undamped[v] = change[v] + c * inp[v];
+        vars[x] = vars[x] + (inp[x] - start[x]);
+        if (calc[v])
+          vars[v] = vars[v] + ((inp[v] + undamped[v] * h/2) / (1 + c * h/2) - start[v]);
+      }
+    }
+    System.arraycopy(vars, 0, last, 0, N);
+    undampedValid = !moved;
+  }
+
+  private void evaluate(double[] x, double[] change, double time) {
+    if (timedOde != null)
+      timedOde.evaluate(x, change, time);
+    else
+      ode.evaluate(x, change);
+    evaluationCount++;
+  }
+
+  private double getDampingRate(int i) {
+    return (ode instanceof DampedDiffEq) ? ((DampedDiffEq)ode).getDampingRate(i) : 0;
+  }
+}
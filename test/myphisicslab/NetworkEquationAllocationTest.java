@@ -0,0 +1,91 @@
+package myphisicslab;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * NetworkEquationAllocationTest Class
+ *
+ * Steps NetworkEquation with each solver and checks that, once the solver has warmed up,
+ * stepping allocates no memory at all. Allocation is counted by the JVM for the current thread,
+ * the test is skipped on a JVM that can not count it.
+ */
+public class NetworkEquationAllocationTest {
+    private static final int NODE_COUNT = 20;
+    private static final int WARM_UP_STEPS = 20000;
+    private static final int MEASURED_STEPS = 20000;
+    private static final double STEP_SIZE = 0.01;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private NetworkModel model;
+
+    @Before
+    public void setUp() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean)bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        //-- Ring of nodes with a chord from every node, so nodes have different degrees
+        StringBuilder pajek = new StringBuilder("*Vertices " + NODE_COUNT + "\n");
+        for (int n=1; n<=NODE_COUNT; n++) {
+            pajek.append(n).append(" \"n").append(n).append("\"\n");
+        }
+        pajek.append("*Edges\n");
+        for (int n=1; n<=NODE_COUNT; n++) {
+            pajek.append(n).append(' ').append(n % NODE_COUNT + 1).append(" 1\n");
+            pajek.append(n).append(' ').append((n + 6) % NODE_COUNT + 1).append(" 0.5\n");
+        }
+        Network network = new PajekFileLoader().parseNetwork(
+                new ByteArrayInputStream(pajek.toString().getBytes(StandardCharsets.UTF_8)));
+        model = new NetworkModel(network.getNodeList(), network.getEdgeList());
+    }
+
+    @Test
+    public void rungeKuttaStepDoesNotAllocate() {
+        assertEquals(0, getAllocatedBytes(SpectrumParameters.SOLVER_RUNGE_KUTTA));
+    }
+
+    @Test
+    public void dormandPrinceStepDoesNotAllocate() {
+        assertEquals(0, getAllocatedBytes(SpectrumParameters.SOLVER_DORMAND_PRINCE));
+    }
+
+    @Test
+    public void velocityVerletStepDoesNotAllocate() {
+        assertEquals(0, getAllocatedBytes(SpectrumParameters.SOLVER_VELOCITY_VERLET));
+    }
+
+    /**
+     * Returns bytes allocated by the current thread while stepping the equation, after warm-up.
+     * @param solverName - one of SpectrumParameters.SOLVERS
+     * @return long
+     */
+    private long getAllocatedBytes(String solverName) {
+        NetworkEquation equation = new NetworkEquation(model);
+        equation.reset(FrequencySweep.getCircleLayout(model.getNodeCount()));
+        equation.setAmplitude(5);
+        equation.setDamping(20);
+        equation.setFrequency(0.7);
+        DiffEqSolver solver = SpectrumParameters.createSolver(solverName, equation);
+        for (int i=0; i<WARM_UP_STEPS; i++) {
+            equation.step(solver, STEP_SIZE);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i=0; i<MEASURED_STEPS; i++) {
+            equation.step(solver, STEP_SIZE);
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,122 @@
+package myphisicslab;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RelaxedLayoutCacheTest Class
+ *
+ * Relaxes a small network through SpectrumRunner and checks that positions are taken from the
+ * layout cache only when the relaxation settings are the same.
+ */
+public class RelaxedLayoutCacheTest {
+    private static final int NODE_COUNT = 12;
+
+    private File directory;
+    private File networkFile;
+    private RelaxedLayoutCache layoutCache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("layoutcache", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        networkFile = new File(directory, "ring.net");
+        StringBuilder pajek = new StringBuilder("*Vertices " + NODE_COUNT + "\n");
+        for (int n=1; n<=NODE_COUNT; n++) {
+            pajek.append(n).append(" \"n").append(n).append("\"\n");
+        }
+        pajek.append("*Edges\n");
+        for (int n=1; n<=NODE_COUNT; n++) {
+            pajek.append(n).append(' ').append(n % NODE_COUNT + 1).append(" 1\n");
+        }
+        OutputStream out = new FileOutputStream(networkFile);
+        try {
+            out.write(pajek.toString().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+        layoutCache = new RelaxedLayoutCache(new File(directory, "relaxed"), RelaxedLayoutCache.DEFAULT_SIZE_LIMIT);
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void keyDependsOnRelaxation() throws IOException {
+        Network network = new PajekFileLoader().loadNetwork(networkFile);
+        String relaxation = RelaxedLayoutCache.getRelaxation(RelaxedLayoutCache.METHOD_SWEEP, 2, 0.01,
+                SpectrumParameters.SOLVER_RUNGE_KUTTA);
+        String key = RelaxedLayoutCache.getKey(network, relaxation);
+        assertEquals(key, RelaxedLayoutCache.getKey(network, relaxation));
+        assertFalse(key.equals(RelaxedLayoutCache.getKey(network))); //-- content only
+        assertFalse(key.equals(RelaxedLayoutCache.getKey(network, RelaxedLayoutCache.getRelaxation(
+                RelaxedLayoutCache.METHOD_SWEEP, 3, 0.01, SpectrumParameters.SOLVER_RUNGE_KUTTA))));
+        assertFalse(key.equals(RelaxedLayoutCache.getKey(network, RelaxedLayoutCache.getRelaxation(
+                RelaxedLayoutCache.METHOD_SIMULATION, 2, 0.01, SpectrumParameters.SOLVER_RUNGE_KUTTA))));
+    }
+
+    @Test
+    public void changedPassTimeMissesCache() throws IOException {
+        double[] relaxed = relax(3);
+        assertEquals(1, countEntries());
+
+        double[] relaxedLonger = relax(6);
+        assertEquals(2, countEntries());
+        assertFalse(relaxed[0] == relaxedLonger[0] && relaxed[1] == relaxedLonger[1]);
+
+        //-- Same pass time again is a hit, no entry is added and the positions are the cached ones
+        Network network = new PajekFileLoader().loadNetwork(networkFile);
+        assertTrue(layoutCache.load(network, createRunner(3).getLayoutKey(network)));
+        assertEquals(2, countEntries());
+        assertEquals(relaxed[0], network.getNodeList().get(0).getInitPosX(), 0);
+        assertEquals(relaxed[1], network.getNodeList().get(0).getInitPosY(), 0);
+    }
+
+    /**
+     * Loads the network through SpectrumRunner with the given pass time
+     * @param passTime - pass time of the runner
+     * @return initial position x and y of the first node
+     */
+    private double[] relax(double passTime) throws IOException {
+        Network network = createRunner(passTime).loadRelaxedNetwork(networkFile);
+        assertTrue(network.isRelaxed());
+        Node node = network.getNodeList().get(0);
+        return new double[] {node.getInitPosX(), node.getInitPosY()};
+    }
+
+    private SpectrumRunner createRunner(double passTime) {
+        SpectrumParameters parameters = new SpectrumParameters();
+        parameters.setPassTime(passTime);
+        SpectrumRunner runner = new SpectrumRunner(parameters, null);
+        runner.setLayoutCache(layoutCache);
+        return runner;
+    }
+
+    private int countEntries() {
+        File[] files = new File(directory, "relaxed").listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}